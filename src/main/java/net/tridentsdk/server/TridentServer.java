@@ -30,6 +30,7 @@ import net.tridentsdk.server.concurrent.TridentTaskScheduler;
 import net.tridentsdk.server.netty.protocol.Protocol;
 import net.tridentsdk.server.player.TridentPlayer;
 import net.tridentsdk.server.service.Statuses;
+import net.tridentsdk.server.world.RegionCache;
 import net.tridentsdk.server.world.TridentWorld;
 import net.tridentsdk.server.world.TridentWorldLoader;
 import net.tridentsdk.util.TridentLogger;
@@ -150,6 +151,7 @@ public final class TridentServer implements Server {
             TridentLogger.get().log("Saving worlds...");
             for (World world : rootWorldLoader.worlds())
                 ((TridentWorld) world).save();
+            RegionCache.instance().closeAll();
 
             TridentLogger.get().log("Shutting down scheduler...");
             ((TridentTaskScheduler) Registered.tasks()).shutdown();
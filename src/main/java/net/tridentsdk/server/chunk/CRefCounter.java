@@ -27,9 +27,13 @@ public class CRefCounter {
     private final TridentChunk wrapped;
     private final LongAdder strongRefs = new LongAdder();
     private final LongAdder weakRefs = new LongAdder();
+    private volatile long lastAccess;
+    // CLOCK reference bit, set on access and cleared when the memory manager passes over the chunk
+    private volatile boolean referenced = true;
 
     private CRefCounter(TridentChunk wrapped) {
         this.wrapped = wrapped;
+        this.lastAccess = wrapped.world().existed();
     }
 
     public static CRefCounter wrap(TridentChunk chunk) {
@@ -69,6 +73,36 @@ public class CRefCounter {
         return wrapped;
     }
 
+    /**
+     * Marks the wrapped chunk as having been accessed on the given world tick
+     *
+     * @param tick the tick which the chunk was accessed
+     */
+    public void touch(long tick) {
+        lastAccess = tick;
+        referenced = true;
+    }
+
+    /**
+     * Clears the reference bit used by the memory manager to find chunks that have not been used recently
+     *
+     * @return {@code true} if the chunk had been accessed since the bit was last cleared
+     */
+    public boolean clearReferenced() {
+        boolean was = referenced;
+        referenced = false;
+        return was;
+    }
+
+    /**
+     * Obtains the world tick which the wrapped chunk was last accessed
+     *
+     * @return the last tick of access
+     */
+    public long lastAccess() {
+        return lastAccess;
+    }
+
     public long list() {
         return strongRefs.sum();
     }
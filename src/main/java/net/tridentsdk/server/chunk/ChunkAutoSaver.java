@@ -0,0 +1,106 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tridentsdk.server.chunk;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.util.TridentLogger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Periodically saves the chunks of a world that have changed
+ *
+ * <p>When a save is due, the dirty chunks are collected and then written a configured amount at a time each tick on
+ * the chunk executor, so that saving a large world does not hold up a single tick.</p>
+ */
+@ThreadSafe
+public class ChunkAutoSaver {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int INTERVAL_TICKS = tridentCfg.getInt("autosave-interval-ticks", 20 * 60 * 5);
+    private static final int CHUNKS_PER_TICK = tridentCfg.getInt("autosave-chunks-per-tick", 16);
+
+    private final TridentWorld world;
+    @GuardedBy("pass")
+    private final ArrayDeque<TridentChunk> pass = new ArrayDeque<>();
+    @GuardedBy("pass")
+    private long lastPass;
+
+    /**
+     * Creates a new auto saver for the given world
+     *
+     * @param world the world to save the chunks of
+     */
+    public ChunkAutoSaver(TridentWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Continues the current save pass, or starts a new one if it is time to
+     *
+     * @param tick the current world tick
+     */
+    public void tick(long tick) {
+        TridentChunk[] batch;
+        synchronized (pass) {
+            if (pass.isEmpty()) {
+                if (INTERVAL_TICKS <= 0 || tick - lastPass < INTERVAL_TICKS) {
+                    return;
+                }
+
+                lastPass = tick;
+                List<CRefCounter> counters = world.chunkHandler().copyCounters();
+                for (CRefCounter counter : counters) {
+                    TridentChunk chunk = counter.unwrap();
+                    if (chunk.isDirty()) {
+                        pass.add(chunk);
+                    }
+                }
+
+                if (pass.isEmpty()) {
+                    return;
+                }
+            }
+
+            batch = new TridentChunk[Math.min(CHUNKS_PER_TICK, pass.size())];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = pass.poll();
+            }
+        }
+
+        ThreadsHandler.chunkExecutor().execute(() -> {
+            for (TridentChunk chunk : batch) {
+                // Could have been saved when it was unloaded in the meantime
+                if (!chunk.isDirty()) {
+                    continue;
+                }
+
+                try {
+                    world.loader().saveChunk(chunk);
+                } catch (Exception e) {
+                    TridentLogger.get().error(e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tridentsdk.server.chunk;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+
+/**
+ * Unloads chunks that have gone unused for a while
+ *
+ * <p>A pass over the loaded chunks is spread across ticks, checking at most a configured amount of chunks each
+ * tick. Chunks that have no strong references and have not been accessed within the idle time are saved and
+ * removed from memory.</p>
+ */
+@ThreadSafe
+public class ChunkEvictor {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int IDLE_TICKS = tridentCfg.getInt("chunk-eviction-idle-ticks", 20 * 60 * 5);
+    private static final int INTERVAL_TICKS = tridentCfg.getInt("chunk-eviction-interval-ticks", 20 * 10);
+    private static final int CHECKS_PER_TICK = tridentCfg.getInt("chunk-eviction-checks-per-tick", 64);
+
+    private final ChunkHandler handler;
+    @GuardedBy("pass")
+    private final ArrayDeque<ChunkLocation> pass = new ArrayDeque<>();
+    @GuardedBy("pass")
+    private long lastPass;
+
+    /**
+     * Creates a new evictor for the chunks held by the given handler
+     *
+     * @param handler the chunk handler to evict chunks from
+     */
+    public ChunkEvictor(ChunkHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Continues the current eviction pass, or starts a new one if it is time to
+     *
+     * @param tick the current world tick
+     */
+    public void tick(long tick) {
+        synchronized (pass) {
+            if (pass.isEmpty()) {
+                if (tick - lastPass < INTERVAL_TICKS) {
+                    return;
+                }
+
+                lastPass = tick;
+                pass.addAll(handler.copyKeys());
+            }
+
+            long idleSince = tick - IDLE_TICKS;
+            for (int i = 0; i < CHECKS_PER_TICK && !pass.isEmpty(); i++) {
+                handler.tryEvict(pass.poll(), idleSince);
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -61,6 +62,23 @@ public class ChunkHandler {
         }
     }
 
+    /**
+     * Places a chunk into the collection of in-memory chunks, unless one is already loaded at its location
+     *
+     * @param chunk the chunk to add
+     * @return {@code true} if the chunk was added
+     */
+    public boolean putIfAbsent(TridentChunk chunk) {
+        synchronized (counters) {
+            if (counters.containsKey(chunk.location())) {
+                return false;
+            }
+
+            counters.put(chunk.location(), CRefCounter.wrap(chunk));
+            return true;
+        }
+    }
+
     /**
      * Obtains the chunk at the given location in the world, generating if given to do so
      *
@@ -73,12 +91,39 @@ public class ChunkHandler {
             synchronized (counters) {
                 CRefCounter counter = counters.get(location);
                 if (counter == null) {
+                    ChunkMemoryManager.instance().recordMiss();
                     return world.generateChunk(location);
-                } else return counter.unwrap();
+                } else {
+                    ChunkMemoryManager.instance().recordHit();
+                    counter.touch(world.existed());
+                    return counter.unwrap();
+                }
             }
         } else {
             CRefCounter refCounter = get(location);
-            return refCounter == null ? null : refCounter.unwrap();
+            if (refCounter == null) {
+                ChunkMemoryManager.instance().recordMiss();
+                return null;
+            }
+
+            ChunkMemoryManager.instance().recordHit();
+            refCounter.touch(world.existed());
+            return refCounter.unwrap();
+        }
+    }
+
+    /**
+     * Populates a chunk whose terrain has been generated while holding the lock of this handler
+     *
+     * <p>Populating writes into the neighbouring chunks, generating them if needed. The handler's lock is taken
+     * first, which is the order {@link #get(ChunkLocation, boolean)} generates chunks in, so this can't deadlock
+     * with it.</p>
+     *
+     * @param chunk the chunk to populate
+     */
+    public void paint(TridentChunk chunk) {
+        synchronized (counters) {
+            chunk.paint(true);
         }
     }
 
@@ -145,6 +190,38 @@ public class ChunkHandler {
         return false;
     }
 
+    /**
+     * Unloads the chunk if it has no strong references and has not been accessed since the given tick
+     *
+     * <p>The chunk is saved and removed from memory on the chunk executor. Accesses that occur before then
+     * cancel the eviction.</p>
+     *
+     * @param location  the location of the chunk to evict
+     * @param idleSince the world tick which the chunk must not have been accessed after
+     * @return {@code true} if the chunk was scheduled to be unloaded
+     */
+    public boolean tryEvict(ChunkLocation location, long idleSince) {
+        CRefCounter counter = get(location);
+        if (counter == null || counter.hasStrongRefs() || counter.lastAccess() > idleSince) {
+            return false;
+        }
+
+        ThreadsHandler.chunkExecutor().execute(() -> {
+            // Recheck, the chunk could have been used while waiting to be run
+            if (counter.hasStrongRefs() || counter.lastAccess() > idleSince) {
+                return;
+            }
+
+            TridentChunk chunk = counter.unwrap();
+            long footprint = chunk.footprint();
+            chunk.unload();
+            if (get(location) != counter) {
+                ChunkMemoryManager.instance().recordEviction(footprint);
+            }
+        });
+        return true;
+    }
+
     /**
      * Releases the reference counters associated with the chunks that are specified in the set given
      *
@@ -183,6 +260,28 @@ public class ChunkHandler {
         }
     }
 
+    /**
+     * Copies the set of chunk locations that are currently loaded
+     *
+     * @return a copy of the loaded chunk locations, safe to iterate
+     */
+    public List<ChunkLocation> copyKeys() {
+        synchronized (counters) {
+            return Lists.newArrayList(counters.keySet());
+        }
+    }
+
+    /**
+     * Copies the reference counters of the chunks that are currently loaded
+     *
+     * @return a copy of the loaded chunk counters, safe to iterate
+     */
+    public List<CRefCounter> copyCounters() {
+        synchronized (counters) {
+            return Lists.newArrayList(counters.values());
+        }
+    }
+
     /**
      * Obtains the chunks that have been loaded into memory
      *
@@ -140,6 +140,18 @@ public class ChunkLocationSet {
         }
     }
 
+    /**
+     * Checks whether the player has been sent the chunk at the given location
+     *
+     * @param location the location of the chunk
+     * @return {@code true} if the chunk is loaded by the player
+     */
+    public boolean contains(ChunkLocation location) {
+        synchronized (knownChunks) {
+            return knownChunks.contains(location);
+        }
+    }
+
     /**
      * Correctly clears and releases the chunk references held by this set
      */
@@ -0,0 +1,232 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tridentsdk.server.chunk;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.TridentWorldLoader;
+import net.tridentsdk.util.TridentLogger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the memory used by loaded chunks, across all worlds, within a configured budget
+ *
+ * <p>Chunks without strong references are evicted using the CLOCK policy: each chunk gets a second chance if it
+ * was accessed since the last time the hand passed over it. When the JVM reports that the heap is still nearly
+ * full after a garbage collection, the budget is halved and recently used chunks are evicted as well, until the
+ * usage falls back under it.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class ChunkMemoryManager {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final long BUDGET = tridentCfg.getInt("chunk-memory-budget-mb", 256) * 1024L * 1024L;
+    private static final int PRESSURE_PERCENT = tridentCfg.getInt("chunk-memory-pressure-percent", 85);
+    private static final int EVICTIONS_PER_TICK = tridentCfg.getInt("chunk-memory-evictions-per-tick", 32);
+    private static final int MEASURE_INTERVAL = 20;
+
+    private static final ChunkMemoryManager INSTANCE = new ChunkMemoryManager();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean underPressure;
+
+    @GuardedBy("clock")
+    private final ArrayDeque<CRefCounter> clock = new ArrayDeque<>();
+    @GuardedBy("clock")
+    private long estimate;
+    @GuardedBy("clock")
+    private int ticks;
+
+    private ChunkMemoryManager() {
+        listenForPressure();
+    }
+
+    /**
+     * Obtains the memory manager for the server's chunks
+     *
+     * @return the chunk memory manager
+     */
+    public static ChunkMemoryManager instance() {
+        return INSTANCE;
+    }
+
+    private void listenForPressure() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Only the tenured pool supports both, the young pools are expected to fill up
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                    && pool.isCollectionUsageThresholdSupported()) {
+                long max = pool.getUsage().getMax();
+                if (max > 0) {
+                    pool.setCollectionUsageThreshold(max / 100 * PRESSURE_PERCENT);
+                }
+            }
+        }
+
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                if (!underPressure) {
+                    TridentLogger.get().warn("Heap is nearly full after garbage collection, unloading chunks");
+                }
+
+                underPressure = true;
+            }
+        }, null, null);
+    }
+
+    /**
+     * Evicts chunks if the loaded chunks are over budget, doing a bounded amount of work
+     *
+     * <p>Called once per tick by the main thread.</p>
+     */
+    public void tick() {
+        synchronized (clock) {
+            if (ticks++ % MEASURE_INTERVAL == 0) {
+                estimate = measure();
+            }
+
+            boolean pressure = underPressure;
+            long target = pressure ? BUDGET / 2 : BUDGET;
+            if (estimate <= target) {
+                underPressure = false;
+                return;
+            }
+
+            int left = pressure ? EVICTIONS_PER_TICK * 4 : EVICTIONS_PER_TICK;
+            int steps = left * 8;
+            while (left > 0 && steps-- > 0 && estimate > target) {
+                if (clock.isEmpty()) {
+                    fill();
+                    if (clock.isEmpty()) {
+                        break;
+                    }
+                }
+
+                CRefCounter counter = clock.poll();
+                // Referenced chunks drop out of this rotation and are picked up again on the next fill
+                if (counter.hasStrongRefs()) {
+                    continue;
+                }
+
+                if (counter.clearReferenced() && !pressure) {
+                    clock.add(counter);
+                    continue;
+                }
+
+                // Taken off the estimate once it has been unloaded, the eviction can still be cancelled
+                TridentChunk chunk = counter.unwrap();
+                if (chunk.world().chunkHandler().tryEvict(chunk.location(), Long.MAX_VALUE)) {
+                    left--;
+                }
+            }
+        }
+    }
+
+    @GuardedBy("clock")
+    private void fill() {
+        for (TridentWorld world : TridentWorldLoader.WORLDS.values()) {
+            clock.addAll(world.chunkHandler().copyCounters());
+        }
+    }
+
+    private long measure() {
+        long size = 0;
+        for (TridentWorld world : TridentWorldLoader.WORLDS.values()) {
+            for (TridentChunk chunk : world.chunkHandler().values()) {
+                size += chunk.footprint();
+            }
+        }
+
+        return size;
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordEviction(long footprint) {
+        evictions.increment();
+        synchronized (clock) {
+            estimate -= footprint;
+        }
+    }
+
+    /**
+     * The amount of chunk requests that were served by an already loaded chunk
+     *
+     * @return the hit count
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * The amount of chunk requests that had to load, generate or give up on a chunk
+     *
+     * @return the miss count
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The amount of chunks that have been unloaded for being idle or to free memory
+     *
+     * @return the eviction count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * The estimated memory used by the loaded chunks, as of the last measurement less the chunks evicted since
+     *
+     * @return the estimated size, in bytes
+     */
+    public long estimatedBytes() {
+        synchronized (clock) {
+            return estimate;
+        }
+    }
+
+    /**
+     * Whether or not the heap was reported as nearly full and chunks are being evicted aggressively
+     *
+     * @return {@code true} if under memory pressure
+     */
+    public boolean underPressure() {
+        return underPressure;
+    }
+}
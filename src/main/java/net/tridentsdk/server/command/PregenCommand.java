@@ -0,0 +1,121 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.command;
+
+import net.tridentsdk.Console;
+import net.tridentsdk.base.Position;
+import net.tridentsdk.meta.ChatColor;
+import net.tridentsdk.plugin.annotation.CommandDesc;
+import net.tridentsdk.plugin.cmd.Command;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.TridentWorldLoader;
+import net.tridentsdk.server.world.WorldPregenerator;
+
+/**
+ * Generates the chunks around the spawn of a world ahead of time, and reports how far it is
+ *
+ * <p>Usage: {@code pregen start <world> <radius> [square|circle] [x z]}, {@code pregen stop <world>} or
+ * {@code pregen status}. The radius and the center are in chunks.</p>
+ */
+@CommandDesc(name = "pregen", permission = "trident.pregen", aliases = "")
+public class PregenCommand extends Command {
+    private static final String USAGE = "Usage: pregen start <world> <radius> [square|circle] [x z], "
+            + "pregen stop <world> or pregen status";
+
+    @Override
+    public void handleConsole(Console sender, String arguments, String alias) {
+        String[] args = arguments.trim().isEmpty() ? new String[0] : arguments.trim().split(" ");
+        String action = args.length > 0 ? args[0] : "status";
+
+        if (action.equals("status")) {
+            boolean running = false;
+            for (TridentWorld world : TridentWorldLoader.WORLDS.values()) {
+                String progress = world.pregenerator().progress();
+                if (progress != null) {
+                    sender.sendRaw(progress);
+                    running = true;
+                }
+            }
+
+            if (!running) {
+                sender.sendRaw("No world is being pre-generated");
+            }
+            return;
+        }
+
+        if (args.length < 2 || !(action.equals("start") || action.equals("stop"))) {
+            sender.sendRaw(ChatColor.RED + USAGE);
+            return;
+        }
+
+        TridentWorld world = TridentWorldLoader.WORLDS.get(args[1]);
+        if (world == null) {
+            sender.sendRaw(ChatColor.RED + "There is no world by the name " + args[1]);
+            return;
+        }
+
+        WorldPregenerator pregenerator = world.pregenerator();
+        if (action.equals("stop")) {
+            if (pregenerator.stop()) {
+                sender.sendRaw(ChatColor.GREEN + "Stopped pre-generating " + world.name());
+            } else {
+                sender.sendRaw(ChatColor.RED + world.name() + " is not being pre-generated");
+            }
+            return;
+        }
+
+        if (args.length < 3 || args.length == 5 || args.length > 6) {
+            sender.sendRaw(ChatColor.RED + USAGE);
+            return;
+        }
+
+        String shape = args.length > 3 ? args[3] : "square";
+        if (!shape.equals("square") && !shape.equals("circle")) {
+            sender.sendRaw(ChatColor.RED + USAGE);
+            return;
+        }
+
+        int radius;
+        boolean circular = shape.equals("circle");
+        Position spawn = world.spawnPosition();
+        int centerX = ((int) Math.floor(spawn.x())) >> 4;
+        int centerZ = ((int) Math.floor(spawn.z())) >> 4;
+        try {
+            radius = Integer.parseInt(args[2]);
+            if (args.length > 5) {
+                centerX = Integer.parseInt(args[4]);
+                centerZ = Integer.parseInt(args[5]);
+            }
+        } catch (NumberFormatException e) {
+            sender.sendRaw(ChatColor.RED + USAGE);
+            return;
+        }
+
+        if (radius < 0) {
+            sender.sendRaw(ChatColor.RED + "The radius cannot be negative");
+            return;
+        }
+
+        if (pregenerator.start(centerX, centerZ, radius, circular)) {
+            sender.sendRaw(ChatColor.GREEN + "Pre-generating " + world.name() + ChatColor.RESET + " within "
+                    + radius + " chunks of " + centerX + ", " + centerZ + ", use pregen status to follow it");
+        } else {
+            sender.sendRaw(ChatColor.RED + world.name() + " is already being pre-generated, stop it first");
+        }
+    }
+}
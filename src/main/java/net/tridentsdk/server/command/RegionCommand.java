@@ -0,0 +1,183 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.command;
+
+import net.tridentsdk.Console;
+import net.tridentsdk.meta.ChatColor;
+import net.tridentsdk.plugin.annotation.CommandDesc;
+import net.tridentsdk.plugin.cmd.Command;
+import net.tridentsdk.server.chunk.ChunkMemoryManager;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.server.world.RegionCache;
+import net.tridentsdk.server.world.RegionFile;
+import net.tridentsdk.server.world.RegionFragmentation;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.TridentWorldLoader;
+import net.tridentsdk.util.TridentLogger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports how fragmented the region files of the worlds are, and compacts them on request
+ *
+ * <p>The stats also show how well the loaded chunks are being reused before they are evicted.</p>
+ *
+ * <p>Usage: {@code region [stats|compact] [world]}</p>
+ */
+@CommandDesc(name = "region", permission = "trident.region", aliases = "")
+public class RegionCommand extends Command {
+    @Override
+    public void handleConsole(Console sender, String arguments, String alias) {
+        String[] args = arguments.trim().isEmpty() ? new String[0] : arguments.trim().split(" ");
+        String action = args.length > 0 ? args[0] : "stats";
+
+        Collection<TridentWorld> worlds = TridentWorldLoader.WORLDS.values();
+        if (args.length > 1) {
+            TridentWorld world = TridentWorldLoader.WORLDS.get(args[1]);
+            if (world == null) {
+                sender.sendRaw(ChatColor.RED + "There is no world by the name " + args[1]);
+                return;
+            }
+            worlds = Collections.singleton(world);
+        }
+
+        switch (action) {
+            case "stats":
+                for (TridentWorld world : worlds) {
+                    stats(sender, world);
+                }
+
+                RegionCache cache = RegionCache.instance();
+                sender.sendRaw("Open region files: " + cache.openHandles() + ", opened " + cache.opens()
+                        + " times (" + cache.reopens() + " reopened after eviction)");
+
+                ChunkMemoryManager memory = ChunkMemoryManager.instance();
+                long hits = memory.hits();
+                long requests = hits + memory.misses();
+                int hitPercent = requests == 0 ? 0 : (int) (hits * 100 / requests);
+                sender.sendRaw("Loaded chunks: " + megabytes(memory.estimatedBytes()) + " estimated, " + hitPercent
+                        + "% of " + requests + " requests already loaded, " + memory.evictions() + " evicted"
+                        + (memory.underPressure() ? ChatColor.RED + " (under memory pressure)" : ""));
+                break;
+            case "compact":
+                for (TridentWorld world : worlds) {
+                    sender.sendRaw("Compacting the regions of " + world.name() + "...");
+                    ThreadsHandler.ioExecutor().execute(() -> compact(sender, world));
+                }
+                break;
+            default:
+                sender.sendRaw(ChatColor.RED + "Usage: region [stats|compact] [world]");
+        }
+    }
+
+    private static void stats(Console sender, TridentWorld world) {
+        int regions = 0;
+        int chunks = 0;
+        int scattered = 0;
+        long fileBytes = 0;
+        long freeBytes = 0;
+        RegionFragmentation worst = null;
+
+        for (Path path : regionFiles(world)) {
+            RegionFile region = RegionCache.instance().acquire(path, false);
+            if (region == null) {
+                continue;
+            }
+
+            try {
+                RegionFragmentation fragmentation = region.fragmentation();
+                regions++;
+                chunks += fragmentation.chunks();
+                scattered += fragmentation.scattered();
+                fileBytes += fragmentation.fileBytes();
+                freeBytes += fragmentation.freeBytes();
+
+                if (worst == null || fragmentation.freePercent() > worst.freePercent()) {
+                    worst = fragmentation;
+                }
+            } finally {
+                RegionCache.instance().release(region);
+            }
+        }
+
+        int freePercent = fileBytes == 0 ? 0 : (int) (freeBytes * 100 / fileBytes);
+        sender.sendRaw(ChatColor.GREEN + world.name() + ChatColor.RESET + ": " + regions + " regions, " + chunks
+                + " chunks, " + megabytes(fileBytes) + " on disk, " + megabytes(freeBytes) + " free ("
+                + freePercent + "%), " + scattered + " scattered chunks");
+        if (worst != null) {
+            sender.sendRaw("  Most fragmented: " + worst.name() + " with " + worst.freePercent() + "% free, "
+                    + worst.scattered() + " of " + worst.chunks() + " chunks scattered");
+        }
+    }
+
+    private static void compact(Console sender, TridentWorld world) {
+        int compacted = 0;
+        long before = 0;
+        long after = 0;
+
+        for (Path path : regionFiles(world)) {
+            RegionFile region = RegionCache.instance().acquire(path, false);
+            if (region == null) {
+                continue;
+            }
+
+            try {
+                before += region.fragmentation().fileBytes();
+                if (region.compact()) {
+                    compacted++;
+                }
+                after += region.fragmentation().fileBytes();
+            } catch (IOException e) {
+                TridentLogger.get().error(e);
+            } finally {
+                RegionCache.instance().release(region);
+            }
+        }
+
+        sender.sendRaw(ChatColor.GREEN + "Compacted " + compacted + " regions of " + world.name() + ChatColor.RESET
+                + ", " + megabytes(before) + " to " + megabytes(after));
+    }
+
+    private static List<Path> regionFiles(TridentWorld world) {
+        List<Path> files = new ArrayList<>();
+        Path directory = Paths.get(world.name() + "/region/");
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "r.*.*.mca")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            TridentLogger.get().error(e);
+        }
+
+        return files;
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
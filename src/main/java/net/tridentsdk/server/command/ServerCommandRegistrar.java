@@ -38,5 +38,7 @@ public class ServerCommandRegistrar {
         Registered.commands().register(null, new OpCommand());
         Registered.commands().register(null, new TeleportCommand());
         Registered.commands().register(null, new SendCommand());
+        Registered.commands().register(null, new RegionCommand());
+        Registered.commands().register(null, new PregenCommand());
     }
 }
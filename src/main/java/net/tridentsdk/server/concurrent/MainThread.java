@@ -19,6 +19,7 @@ package net.tridentsdk.server.concurrent;
 
 import net.tridentsdk.config.Config;
 import net.tridentsdk.registry.Registered;
+import net.tridentsdk.server.chunk.ChunkMemoryManager;
 import net.tridentsdk.server.util.ConcurrentCircularArray;
 import net.tridentsdk.server.world.TridentWorld;
 import net.tridentsdk.server.world.TridentWorldLoader;
@@ -99,6 +100,8 @@ public class MainThread extends Thread {
 
         // TODO: check the worlds to make sure they're not suffering
 
+        ChunkMemoryManager.instance().tick();
+
         ((TridentTaskScheduler) Registered.tasks()).tick();
 
         TickSync.awaitSync();
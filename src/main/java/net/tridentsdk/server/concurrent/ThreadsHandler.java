@@ -45,6 +45,8 @@ public final class ThreadsHandler {
     // These 2 were originally placed together but livelock concerns have partitioned them
     private static final SelectableThreadPool chunks = configure("Chunks");
     private static final SelectableThreadPool generator = configure("Generator");
+    private static final SelectableThreadPool lighting = configure("Lighting");
+    private static final SelectableThreadPool io = configure("IO");
 
     private ThreadsHandler() {
     }
@@ -108,6 +110,26 @@ public final class ThreadsHandler {
         return generator;
     }
 
+    /**
+     * Gets the executor for the lighting thread pool
+     *
+     * @return the executor
+     */
+    @InternalUseOnly
+    public static SelectableThreadPool lightExecutor() {
+        return lighting;
+    }
+
+    /**
+     * Gets the executor for the disk I/O thread pool
+     *
+     * @return the executor
+     */
+    @InternalUseOnly
+    public static SelectableThreadPool ioExecutor() {
+        return io;
+    }
+
     /**
      * Gets the executor for the entity thread pool
      *
@@ -0,0 +1,205 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.entity;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.entity.Entity;
+import net.tridentsdk.server.netty.packet.Packet;
+import net.tridentsdk.server.packets.play.out.PacketPlayOutDestroyEntities;
+import net.tridentsdk.server.player.TridentPlayer;
+import net.tridentsdk.server.world.TridentWorld;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Keeps track of which entities each player can see, so that entity packets are only sent to players nearby
+ *
+ * <p>Each player keeps the set of entities within its tracking range, and each entity keeps the set of players
+ * tracking it. When a player is updated, entities that came into range are spawned for it and entities that left
+ * are destroyed. Packets about an entity are then only sent to the players tracking it.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public final class EntityTracker {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int RANGE = tridentCfg.getInt("entity-tracking-range", 64);
+    private static final int[] NO_IDS = new int[0];
+
+    private EntityTracker() {
+    }
+
+    /**
+     * Spawns the entities that came into range of the player, and destroys those that have left it
+     *
+     * @param player the player to update
+     */
+    public static void update(TridentPlayer player) {
+        double range = Math.min(RANGE, player.viewDistance() * 16);
+        Set<Entity> inRange = new HashSet<>();
+        ((TridentWorld) player.world()).entitiesInRange(player.position(), range, null, inRange);
+        inRange.remove(player);
+
+        Set<TridentEntity> tracked = player.trackedEntities();
+        int[] left = NO_IDS;
+        int leftCount = 0;
+        for (Iterator<TridentEntity> it = tracked.iterator(); it.hasNext(); ) {
+            TridentEntity entity = it.next();
+            if (!inRange.contains(entity)) {
+                it.remove();
+                entity.trackers().remove(player);
+
+                if (leftCount == left.length) {
+                    left = Arrays.copyOf(left, Math.max(8, leftCount * 2));
+                }
+                left[leftCount++] = entity.entityId();
+            }
+        }
+
+        // Everything that left range is destroyed with a single packet
+        if (leftCount > 0) {
+            player.connection().sendPacket(new PacketPlayOutDestroyEntities()
+                    .set("destroyedEntities", Arrays.copyOf(left, leftCount)));
+        }
+
+        for (Entity e : inRange) {
+            TridentEntity entity = (TridentEntity) e;
+            if (tracked.add(entity)) {
+                entity.trackers().add(player);
+                entity.sendSpawn(player);
+
+                // Removed while it was being spawned, make sure the player does not keep seeing it
+                if (entity.isRemoved()) {
+                    tracked.remove(entity);
+                    entity.trackers().remove(player);
+                    player.connection().sendPacket(new PacketPlayOutDestroyEntities()
+                            .set("destroyedEntities", new int[] { entity.entityId() }));
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates which players see an entity that has jumped to a new position, rather than waiting for the players'
+     * own updates
+     *
+     * <p>Players in range of the new position that weren't tracking the entity have it spawned, and those tracking
+     * it that are now out of range have it destroyed. If the entity is a player, its own view is updated too.</p>
+     *
+     * @param entity the entity that moved
+     */
+    public static void moved(TridentEntity entity) {
+        Set<Entity> nearby = new HashSet<>();
+        ((TridentWorld) entity.world()).entitiesInRange(entity.position(), RANGE,
+                e -> e instanceof TridentPlayer && e != entity, nearby);
+
+        for (Iterator<TridentPlayer> it = entity.trackers().iterator(); it.hasNext(); ) {
+            TridentPlayer player = it.next();
+            if (!nearby.contains(player) || !inRange(player, entity)) {
+                it.remove();
+                player.trackedEntities().remove(entity);
+                player.connection().sendPacket(new PacketPlayOutDestroyEntities()
+                        .set("destroyedEntities", new int[] { entity.entityId() }));
+            }
+        }
+
+        for (Entity e : nearby) {
+            TridentPlayer player = (TridentPlayer) e;
+            if (inRange(player, entity) && player.trackedEntities().add(entity)) {
+                entity.trackers().add(player);
+                entity.sendSpawn(player);
+            }
+        }
+
+        if (entity instanceof TridentPlayer) {
+            update((TridentPlayer) entity);
+        }
+    }
+
+    // Whether the entity is within the tracking range of the player, which is limited by its view distance
+    private static boolean inRange(TridentPlayer player, TridentEntity entity) {
+        if (player.world() != entity.world()) {
+            return false;
+        }
+
+        double range = Math.min(RANGE, player.viewDistance() * 16);
+        double dx = player.position().x() - entity.position().x();
+        double dy = player.position().y() - entity.position().y();
+        double dz = player.position().z() - entity.position().z();
+        return dx * dx + dy * dy + dz * dz <= range * range;
+    }
+
+    /**
+     * Sends a packet about the entity to the players tracking it
+     *
+     * @param entity the entity the packet is about
+     * @param packet the packet to send
+     */
+    public static void send(TridentEntity entity, Packet packet) {
+        for (TridentPlayer player : entity.trackers()) {
+            player.connection().sendPacket(packet);
+        }
+    }
+
+    /**
+     * Sends a packet about the entity to the players tracking it, and the entity itself if it is a player
+     *
+     * @param entity the entity the packet is about
+     * @param packet the packet to send
+     */
+    public static void sendWithSelf(TridentEntity entity, Packet packet) {
+        send(entity, packet);
+        if (entity instanceof TridentPlayer) {
+            ((TridentPlayer) entity).connection().sendPacket(packet);
+        }
+    }
+
+    /**
+     * Destroys the entity for every player tracking it, and stops them from tracking it
+     *
+     * @param entity the entity that was removed
+     */
+    public static void untrack(TridentEntity entity) {
+        PacketPlayOutDestroyEntities packet = new PacketPlayOutDestroyEntities();
+        packet.set("destroyedEntities", new int[] { entity.entityId() });
+
+        for (Iterator<TridentPlayer> it = entity.trackers().iterator(); it.hasNext(); ) {
+            TridentPlayer player = it.next();
+            it.remove();
+            player.trackedEntities().remove(entity);
+            player.connection().sendPacket(packet);
+        }
+    }
+
+    /**
+     * Stops the player from tracking any entity, when it leaves the server
+     *
+     * @param player the player to forget
+     */
+    public static void forget(TridentPlayer player) {
+        for (Iterator<TridentEntity> it = player.trackedEntities().iterator(); it.hasNext(); ) {
+            it.next().trackers().remove(player);
+            it.remove();
+        }
+    }
+}
@@ -96,9 +96,7 @@ public class TridentDroppedItem extends TridentEntity implements DroppedItem {
     }
 
     @Override
-    public TridentEntity spawn(){
-        super.spawn();
-
+    protected void sendSpawn(TridentPlayer player) {
         ProtocolMetadata metadata = new ProtocolMetadata();
         super.encodeMetadata(metadata);
         metadata.setMeta(6, MetadataType.SLOT, new Slot(item));
@@ -111,9 +109,8 @@ public class TridentDroppedItem extends TridentEntity implements DroppedItem {
         meta.set("entityId", entityId());
         meta.set("metadata", metadata);
 
-        TridentPlayer.sendAll(object);
-        TridentPlayer.sendAll(meta);
-        return this;
+        player.connection().sendPacket(object);
+        player.connection().sendPacket(meta);
     }
 
     public Item item(){
@@ -17,10 +17,10 @@
 
 package net.tridentsdk.server.entity;
 
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AtomicDouble;
 import net.tridentsdk.base.BoundingBox;
 import net.tridentsdk.base.Position;
-import net.tridentsdk.base.Substance;
 import net.tridentsdk.concurrent.SelectableThreadPool;
 import net.tridentsdk.docs.InternalUseOnly;
 import net.tridentsdk.docs.PossiblyThreadSafe;
@@ -33,12 +33,12 @@ import net.tridentsdk.server.concurrent.ThreadsHandler;
 import net.tridentsdk.server.concurrent.TickSync;
 import net.tridentsdk.server.data.MetadataType;
 import net.tridentsdk.server.data.ProtocolMetadata;
-import net.tridentsdk.server.packets.play.out.PacketPlayOutDestroyEntities;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutEntityTeleport;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutEntityVelocity;
 import net.tridentsdk.server.player.TridentPlayer;
 import net.tridentsdk.server.world.TridentChunk;
 import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.WorldUtils;
 import net.tridentsdk.util.Vector;
 import net.tridentsdk.util.WeakEntity;
 import net.tridentsdk.world.World;
@@ -48,7 +48,6 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
 /**
  * Entity abstraction base
@@ -140,6 +139,14 @@ public class TridentEntity implements Entity {
      * TODO
      */
     protected volatile float height;
+    /**
+     * The players that are in range to see this entity
+     */
+    protected final Set<TridentPlayer> trackers = Sets.newConcurrentHashSet();
+    /**
+     * Whether or not the entity has been removed from the world
+     */
+    protected volatile boolean removed;
 
     /**
      * Creates a new entity
@@ -155,10 +162,24 @@ public class TridentEntity implements Entity {
         this.boundingBox = new BoundingBox(0.0D, 0.0D, 0.0D, 0.0D, 0.0D, 0.0D);
         setSize(0.6f, 1.8f);
         updateBoudingBox();
-        for (double y = this.loc.y(); y > 0.0; y--) {
-            Position l = Position.create(this.loc.world(), this.loc.x(), y, this.loc.z());
+        updateGround();
+    }
+
+    @Deprecated
+    protected TridentEntity() {
+        // constructor for deserializing
+    }
 
-            if (l.block().substance() != Substance.AIR) {
+    /**
+     * Scans down from the entity's position to find the first non-air block, updating the fall distance and
+     * ground state
+     */
+    private void updateGround() {
+        int bx = (int) Math.floor(this.loc.x());
+        int bz = (int) Math.floor(this.loc.z());
+        TridentChunk chunk = ((TridentWorld) this.loc.world()).chunkAt(WorldUtils.chunkLocation(bx, bz), true);
+        for (double y = this.loc.y(); y > 0.0; y--) {
+            if (chunk.typeAt(bx, (int) Math.floor(y), bz) != 0) {
                 this.fallDistance.set((long) (this.loc.y() - y));
                 this.onGround = this.fallDistance.get() == 0.0D;
 
@@ -167,12 +188,33 @@ public class TridentEntity implements Entity {
         }
     }
 
-    @Deprecated
-    protected TridentEntity() {
-        // constructor for deserializing
+    protected void doTick() {
     }
 
-    protected void doTick() {
+    /**
+     * Sends the packets that make this entity appear to a player that has come into range of it
+     *
+     * @param player the player to show the entity to
+     */
+    protected void sendSpawn(TridentPlayer player) {
+    }
+
+    /**
+     * The players that are in range to see this entity, to which packets about it are sent
+     *
+     * @return the live set of tracking players
+     */
+    public Set<TridentPlayer> trackers() {
+        return trackers;
+    }
+
+    /**
+     * Whether or not the entity has been removed from the world
+     *
+     * @return {@code true} if the entity is removed
+     */
+    public boolean isRemoved() {
+        return removed;
     }
 
     protected void doRemove() {
@@ -191,7 +233,7 @@ public class TridentEntity implements Entity {
      */
     public TridentEntity spawn() {
         HANDLER.register(this);
-        ((TridentChunk) loc.chunk()).entitiesInternal().add(this);
+        ((TridentChunk) loc.chunk()).entityIndex().add(this, loc.y());
         ((TridentWorld) loc.world()).addEntity(this);
         return this;
     }
@@ -214,20 +256,13 @@ public class TridentEntity implements Entity {
 
     @Override
     public void teleport(Position location) {
-        this.loc = location;
-
-        for (double y = this.loc.y(); y > 0.0; y--) {
-            Position l = Position.create(this.loc.world(), this.loc.x(), y, this.loc.z());
+        moveTo(location);
+        updateGround();
 
-            if (l.world().blockAt(l).substance() != Substance.AIR) {
-                this.fallDistance.set((long) (this.loc.y() - y));
-                this.onGround = this.fallDistance.get() == 0.0D;
+        // Shown to the players around the destination and hidden from those left behind before the packet is sent
+        EntityTracker.moved(this);
 
-                break;
-            }
-        }
-
-        TridentPlayer.sendAll(new PacketPlayOutEntityTeleport().set("entityId", this.id)
+        EntityTracker.sendWithSelf(this, new PacketPlayOutEntityTeleport().set("entityId", this.id)
                 .set("location", this.loc)
                 .set("onGround", this.onGround));
     }
@@ -243,11 +278,19 @@ public class TridentEntity implements Entity {
     }
 
     public void setPosition(Position loc) {
-        TridentChunk from = (TridentChunk) position().chunk();
+        moveTo(loc);
+    }
+
+    // Moves the entity between the section buckets of its chunks, so that range queries find it where it is
+    private void moveTo(Position loc) {
+        Position old = position();
+        TridentChunk from = (TridentChunk) old.chunk();
         TridentChunk chunk = (TridentChunk) loc.chunk();
         if (!from.equals(chunk)) {
-            from.entitiesInternal().remove(this);
-            chunk.entitiesInternal().add(this);
+            from.entityIndex().remove(this, old.y());
+            chunk.entityIndex().add(this, loc.y());
+        } else {
+            from.entityIndex().move(this, old.y(), loc.y());
         }
 
         this.loc = loc;
@@ -268,7 +311,8 @@ public class TridentEntity implements Entity {
     public void setVelocity(Vector vector) {
         this.velocity = vector;
 
-        TridentPlayer.sendAll(new PacketPlayOutEntityVelocity().set("entityId", this.id).set("velocity", vector));
+        EntityTracker.sendWithSelf(this, new PacketPlayOutEntityVelocity().set("entityId", this.id)
+                .set("velocity", vector));
     }
 
     @Override
@@ -313,12 +357,9 @@ public class TridentEntity implements Entity {
 
     @Override
     public Set<Entity> withinRange(double radius) {
-        double squared = radius * radius;
-        Set<Entity> entities = position().world().entities();
-
-        return entities.stream()
-                .filter((e) -> e.position().distanceSquared(position()) <= squared)
-                .collect(Collectors.toSet());
+        Set<Entity> entities = Sets.newHashSet();
+        ((TridentWorld) world()).entitiesInRange(position(), radius, null, entities);
+        return entities;
     }
 
     @Override
@@ -328,9 +369,8 @@ public class TridentEntity implements Entity {
 
     @Override
     public void remove() {
-        PacketPlayOutDestroyEntities packet = new PacketPlayOutDestroyEntities();
-        packet.set("destroyedEntities", new int[] { entityId() });
-        TridentPlayer.sendAll(packet);
+        removed = true;
+        EntityTracker.untrack(this);
         HANDLER.removeEntity(this);
         ((TridentWorld) world()).removeEntity(this);
 
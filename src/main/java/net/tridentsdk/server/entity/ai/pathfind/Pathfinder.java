@@ -17,11 +17,10 @@
 
 package net.tridentsdk.server.entity.ai.pathfind;
 
-import net.tridentsdk.base.Block;
 import net.tridentsdk.base.Position;
 import net.tridentsdk.base.Substance;
 import net.tridentsdk.entity.Entity;
-import net.tridentsdk.util.Vector;
+import net.tridentsdk.server.world.TridentWorld;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.util.ArrayList;
@@ -130,17 +129,22 @@ public class Pathfinder {
     }
 
     private boolean canWalkOn(Node node) {
-        Block block = entity.world().blockAt(Position.create(entity.world(), node.x(), node.y(), node.z()));
-        return block.substance().isSolid();
+        Substance type = substanceAt(node.x(), node.y(), node.z());
+        return type != null && type.isSolid();
     }
 
     private boolean canWalkThrough(Node node) {
-        Block block = entity.world().blockAt(Position.create(entity.world(), node.x(), node.y(), node.z()));
-        return canWalkThrough(block.substance()) && canWalkThrough(block.relativeBlock(new Vector(0, 1, 0)).substance());
+        return canWalkThrough(substanceAt(node.x(), node.y(), node.z()))
+                && canWalkThrough(substanceAt(node.x(), node.y() + 1, node.z()));
+    }
+
+    private Substance substanceAt(int x, int y, int z) {
+        return Substance.fromId((short) ((TridentWorld) entity.world()).typeAt(x, y, z));
     }
 
     private boolean canWalkThrough(Substance type) {
-        return type == Substance.AIR || type == Substance.LONG_GRASS || type == Substance.DEAD_BUSH || type == Substance.SAPLING
-                || type == Substance.RED_ROSE || type == Substance.YELLOW_FLOWER || type == Substance.VINE;
+        return type == null || type == Substance.AIR || type == Substance.LONG_GRASS || type == Substance.DEAD_BUSH
+                || type == Substance.SAPLING || type == Substance.RED_ROSE || type == Substance.YELLOW_FLOWER
+                || type == Substance.VINE;
     }
 }
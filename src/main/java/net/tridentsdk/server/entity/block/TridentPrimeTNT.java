@@ -17,7 +17,6 @@
 
 package net.tridentsdk.server.entity.block;
 
-import net.tridentsdk.base.Block;
 import net.tridentsdk.base.Position;
 import net.tridentsdk.base.Substance;
 import net.tridentsdk.effect.sound.SoundEffectType;
@@ -30,6 +29,8 @@ import net.tridentsdk.server.packets.play.out.PacketPlayOutExplosion;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutSoundEffect;
 import net.tridentsdk.server.player.TridentPlayer;
 import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.WorldUtils;
 import net.tridentsdk.util.Vector;
 
 import java.util.UUID;
@@ -63,21 +64,26 @@ public class TridentPrimeTNT extends TridentFallingBlock implements PrimeTNT {
             int minZ = (int) (p.z() - radius);
             int maxZ = (int) (p.z() + radius);
 
-            RecordBuilder[] records = new RecordBuilder[(int) Math.pow(radius * 2, 3)];
+            TridentWorld world = (TridentWorld) p.world();
+            int sizeX = maxX - minX;
+            int sizeZ = maxZ - minZ;
+            char[] types = world.readRegion(minX, minY, minZ, maxX, maxY, maxZ, null);
+
+            RecordBuilder[] records = new RecordBuilder[types.length];
             int recordIdx = 0;
 
             for (int i = minX; i < maxX; i++) {
-                for (int j = minY; j < maxY; j++) {
-                    for (int k = minZ; k < maxZ; k++) {
-                        Block block = p.world().blockAt(new Position(p.world(), i, j, k));
-                        ((TridentChunk) p.world().chunkAt(i / 16, k / 16, false))
-                                .setAt(i, j, k, Substance.AIR, (byte) 0, (byte) 0, (byte) 0);
+                for (int k = minZ; k < maxZ; k++) {
+                    TridentChunk chunk = world.chunkAt(WorldUtils.chunkLocation(i, k), true);
+                    for (int j = minY; j < maxY; j++) {
+                        char type = types[((j - minY) * sizeZ + (k - minZ)) * sizeX + (i - minX)];
+                        chunk.setAt(i, j, k, Substance.AIR, (byte) 0);
                         records[recordIdx] = new RecordBuilder()
                                 .setX((byte) i)
                                 .setY((byte) j)
                                 .setZ((byte) k)
-                                .setData(block.meta())
-                                .setBlockId(block.substance().id());
+                                .setData(type & 15)
+                                .setBlockId(type >> 4);
                         recordIdx++;
                     }
                 }
@@ -21,7 +21,6 @@ import net.tridentsdk.entity.living.ProjectileLauncher;
 import net.tridentsdk.entity.projectile.Arrow;
 import net.tridentsdk.entity.traits.EntityProperties;
 import net.tridentsdk.entity.types.EntityType;
-import net.tridentsdk.server.entity.TridentEntity;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutSpawnObject;
 import net.tridentsdk.server.player.TridentPlayer;
 
@@ -63,9 +62,7 @@ public class TridentArrow extends TridentProjectile implements Arrow {
     }
 
     @Override
-    public TridentEntity spawn() {
-        TridentPlayer.sendFiltered(new PacketPlayOutSpawnObject().set("entityId", entityId()).set("entity", this),
-                player -> player.world().equals(this.world()));
-        return super.spawn();
+    protected void sendSpawn(TridentPlayer player) {
+        player.connection().sendPacket(new PacketPlayOutSpawnObject().set("entityId", entityId()).set("entity", this));
     }
 }
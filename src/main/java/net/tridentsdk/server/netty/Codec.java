@@ -66,6 +66,20 @@ public final class Codec {
         return BigInteger.valueOf(integer).toByteArray().length;
     }
 
+    /**
+     * Gets the amount of bytes the given integer takes up when written as a VarInt
+     *
+     * @param value the integer to measure
+     * @return the length of the VarInt, from 1 to 5 bytes
+     */
+    public static int varIntLength(int value) {
+        if ((value & 0xFFFFFF80) == 0) return 1;
+        if ((value & 0xFFFFC000) == 0) return 2;
+        if ((value & 0xFFE00000) == 0) return 3;
+        if ((value & 0xF0000000) == 0) return 4;
+        return 5;
+    }
+
     /**
      * Writes a string to the buffer
      *
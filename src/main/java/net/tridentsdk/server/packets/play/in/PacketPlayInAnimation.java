@@ -18,6 +18,7 @@
 package net.tridentsdk.server.packets.play.in;
 
 import io.netty.buffer.ByteBuf;
+import net.tridentsdk.server.entity.EntityTracker;
 import net.tridentsdk.server.netty.ClientConnection;
 import net.tridentsdk.server.netty.packet.InPacket;
 import net.tridentsdk.server.netty.packet.Packet;
@@ -43,7 +44,7 @@ public class PacketPlayInAnimation extends InPacket {
     @Override
     public void handleReceived(ClientConnection connection) {
         TridentPlayer player = ((PlayerConnection) connection).player();
-        TridentPlayer.sendFiltered(new PacketPlayOutAnimation()
-                .set("entityId", player.entityId()).set("animationId", 0), p -> !player.equals(p));
+        EntityTracker.send(player, new PacketPlayOutAnimation()
+                .set("entityId", player.entityId()).set("animationId", 0));
     }
 }
@@ -39,7 +39,6 @@ import net.tridentsdk.server.entity.projectile.TridentArrow;
 import net.tridentsdk.server.netty.ClientConnection;
 import net.tridentsdk.server.netty.packet.InPacket;
 import net.tridentsdk.server.netty.packet.Packet;
-import net.tridentsdk.server.packets.play.out.PacketPlayOutBlockChange;
 import net.tridentsdk.server.player.PlayerConnection;
 import net.tridentsdk.server.player.TridentPlayer;
 import net.tridentsdk.server.world.TridentChunk;
@@ -189,15 +188,13 @@ public class PacketPlayInPlayerDig extends InPacket {
                     if (e.getValue() instanceof Tile) {
                         ((TridentWorld) location.world()).tilesInternal().remove(e.getValue());
                         Position pos = block.position();
-                        ((TridentChunk) pos.chunk()).tilesInternal().remove(new Vector(pos.x(), pos.y(), pos.z()));
+                        ((TridentChunk) pos.chunk()).tilesInternal().remove((int) pos.x(), (int) pos.y(), (int) pos.z());
                     }
                 });
 
                 int[] arr = {block.substance().id() + (block.meta() << 12)};
 
-                ((TridentChunk) location().chunk()).setAt(location, Substance.AIR, (byte) 0, (byte) 255, (byte) 15);
-                TridentPlayer.sendAll(new PacketPlayOutBlockChange()
-                        .set("location", location).set("blockId", Substance.AIR.id()));
+                ((TridentChunk) location().chunk()).setAt(location, Substance.AIR, (byte) 0);
 
                 ParticleEffect effect = location.world().spawnParticle(ParticleEffectType.BLOCK_CRACK);
                 effect.setCount(64);
@@ -17,6 +17,7 @@
 
 package net.tridentsdk.server.player;
 
+import com.google.common.collect.Sets;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -44,7 +45,9 @@ import net.tridentsdk.server.chunk.ChunkLocationSet;
 import net.tridentsdk.server.concurrent.ThreadsHandler;
 import net.tridentsdk.server.data.MetadataType;
 import net.tridentsdk.server.data.ProtocolMetadata;
+import net.tridentsdk.server.entity.EntityTracker;
 import net.tridentsdk.server.entity.TridentDroppedItem;
+import net.tridentsdk.server.entity.TridentEntity;
 import net.tridentsdk.server.event.EventProcessor;
 import net.tridentsdk.server.netty.ClientConnection;
 import net.tridentsdk.server.netty.packet.Packet;
@@ -76,6 +79,7 @@ public class TridentPlayer extends OfflinePlayer {
 
     private final PlayerConnection connection;
     public final ChunkLocationSet knownChunks = new ChunkLocationSet(this);
+    private final Set<TridentEntity> tracked = Sets.newConcurrentHashSet();
     private final LinkedHashSet<Integer> dragSlots = new LinkedHashSet<>();
     private volatile ClickAction drag;
     private volatile boolean loggingIn = true;
@@ -216,26 +220,30 @@ public class TridentPlayer extends OfflinePlayer {
         TridentLogger.get().log(name + " has joined the server");
         MessageBuilder builder = new MessageBuilder(name + " has joined the server").color(ChatColor.YELLOW).build();
         for (Player player : players()) {
-            TridentPlayer p = (TridentPlayer) player;
             builder.sendTo(player);
-
-            if (!p.equals(this)) {
-                ProtocolMetadata metadata = new ProtocolMetadata();
-                encodeMetadata(metadata);
-
-                p.connection.sendPacket(new PacketPlayOutSpawnPlayer()
-                        .set("entityId", id)
-                        .set("player", this)
-                        .set("metadata", metadata));
-
-                metadata = new ProtocolMetadata();
-                p.encodeMetadata(metadata);
-                // connection.sendPacket(new PacketPlayOutSpawnPlayer()
-                //         .set("entityId", p.id)
-                //         .set("player", p)
-                //         .set("metadata", metadata));
-            }
         }
+
+        // Players nearby are spawned for each other by the entity tracker on their next tick
+    }
+
+    @Override
+    protected void sendSpawn(TridentPlayer player) {
+        ProtocolMetadata metadata = new ProtocolMetadata();
+        encodeMetadata(metadata);
+
+        player.connection.sendPacket(new PacketPlayOutSpawnPlayer()
+                .set("entityId", id)
+                .set("player", this)
+                .set("metadata", metadata));
+    }
+
+    /**
+     * The entities that are in range for this player to see
+     *
+     * @return the live set of tracked entities
+     */
+    public Set<TridentEntity> trackedEntities() {
+        return tracked;
     }
 
     @Override
@@ -246,6 +254,7 @@ public class TridentPlayer extends OfflinePlayer {
                 //knownChunks.clean(distance);
                 //knownChunks.update(distance);
             });
+            EntityTracker.update(this);
         }
 
         connection.tick();
@@ -254,6 +263,7 @@ public class TridentPlayer extends OfflinePlayer {
     @Override
     protected void doRemove() {
         knownChunks.clear();
+        EntityTracker.forget(this);
 
         PacketPlayOutPlayerListItem item = new PacketPlayOutPlayerListItem();
         item.set("action", 4).set("playerListData", new PlayerListDataBuilder[]{
@@ -305,7 +315,7 @@ public class TridentPlayer extends OfflinePlayer {
                     PacketPlayOutCollectItem collectItem = new PacketPlayOutCollectItem();
                     collectItem.set("collectedId", item.entityId());
                     collectItem.set("collectorId", entityId());
-                    sendAll(collectItem);
+                    EntityTracker.sendWithSelf(this, collectItem);
                     item.remove();
                 }
             });
@@ -317,29 +327,22 @@ public class TridentPlayer extends OfflinePlayer {
 
         // fixme floating point comparison
         if (dX == 0 && dY == 0 && dZ == 0) {
-            sendFiltered(new PacketPlayOutEntityLook().set("entityId", entityId())
-                            .set("location", loc).set("onGround", onGround), player -> !player.equals(this)
-                    );
+            EntityTracker.send(this, new PacketPlayOutEntityLook().set("entityId", entityId())
+                    .set("location", loc).set("onGround", onGround));
 
             return;
         }
 
         if (dX > 4 || dY > 4 || dZ > 4 || (ticksExisted.get() & 1) == 0) {
-            sendFiltered(new PacketPlayOutEntityTeleport()
+            EntityTracker.send(this, new PacketPlayOutEntityTeleport()
                     .set("entityId", entityId())
                     .set("location", loc)
-                    .set("onGround", onGround), player -> !player.equals(this));
+                    .set("onGround", onGround));
         } else {
-            for (Player player : players()) {
-                if (player.equals(this)) continue;
-
-                Packet packet = new PacketPlayOutEntityRelativeMove()
-                        .set("entityId", entityId())
-                        .set("difference", new Vector(dX, dY, dZ))
-                        .set("onGround", onGround);
-
-                ((TridentPlayer) player).connection.sendPacket(packet);
-            }
+            EntityTracker.send(this, new PacketPlayOutEntityRelativeMove()
+                    .set("entityId", entityId())
+                    .set("difference", new Vector(dX, dY, dZ))
+                    .set("onGround", onGround));
         }
     }
 
@@ -476,8 +479,7 @@ public class TridentPlayer extends OfflinePlayer {
 
         ProtocolMetadata meta = new ProtocolMetadata();
         encodeMetadata(meta);
-        sendFiltered(new PacketPlayOutEntityMetadata().set("entityId", entityId()).set("metadata", meta),
-                p -> !p.equals(this));
+        EntityTracker.send(this, new PacketPlayOutEntityMetadata().set("entityId", entityId()).set("metadata", meta));
     }
 
     public boolean isCrouching() {
@@ -490,8 +492,7 @@ public class TridentPlayer extends OfflinePlayer {
 
         ProtocolMetadata meta = new ProtocolMetadata();
         encodeMetadata(meta);
-        sendFiltered(new PacketPlayOutEntityMetadata().set("entityId", entityId()).set("metadata", meta),
-                p -> !p.equals(this));
+        EntityTracker.send(this, new PacketPlayOutEntityMetadata().set("entityId", entityId()).set("metadata", meta));
     }
 
     public void setLocale(Locale locale) {
@@ -0,0 +1,334 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads an Anvil chunk straight from its NBT encoding into chunk sections
+ *
+ * <p>Unlike decoding the whole tag tree and deserializing the sections from it, only the values the chunk uses are
+ * kept. Tags that are not needed, such as entities and tile ticks, are skipped over without being built, and the
+ * block ids are expanded into the section types from a buffer reused for every section.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@NotThreadSafe
+public final class AnvilChunkDecoder {
+    private static final int TAG_END = 0;
+    private static final int TAG_BYTE = 1;
+    private static final int TAG_SHORT = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_BYTE_ARRAY = 7;
+    private static final int TAG_STRING = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_COMPOUND = 10;
+    private static final int TAG_INT_ARRAY = 11;
+    private static final int TAG_LONG_ARRAY = 12;
+
+    private static final byte[] LEVEL = name("Level");
+    private static final byte[] LAST_UPDATE = name("LastUpdate");
+    private static final byte[] LIGHT_POPULATED = name("LightPopulated");
+    private static final byte[] TERRAIN_POPULATED = name("TerrainPopulated");
+    private static final byte[] INHABITED_TIME = name("InhabitedTime");
+    private static final byte[] HEIGHT_MAP = name("HeightMap");
+    private static final byte[] SECTIONS = name("Sections");
+    private static final byte[] Y = name("Y");
+    private static final byte[] BLOCKS = name("Blocks");
+    private static final byte[] ADD = name("Add");
+    private static final byte[] DATA = name("Data");
+    private static final byte[] BLOCK_LIGHT = name("BlockLight");
+    private static final byte[] SKY_LIGHT = name("SkyLight");
+
+    private final DataInput in;
+
+    // The name of the tag being read, compared without building a string
+    private byte[] name = new byte[32];
+    private int nameLength;
+
+    // The block ids and their add nibbles are only needed until the section types are built
+    private final byte[] blocks = new byte[ChunkSection.LENGTH];
+    private final byte[] add = new byte[ChunkSection.LENGTH / 2];
+
+    private final ChunkSection[] sections = new ChunkSection[16];
+    private int[] heights;
+    private long lastUpdate;
+    private byte lightPopulated;
+    private byte terrainPopulated;
+    private long inhabitedTime;
+
+    private AnvilChunkDecoder(DataInput in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a chunk from its uncompressed NBT encoding
+     *
+     * @param in the input to read the chunk from
+     * @return the decoded chunk
+     * @throws IOException if the input could not be read or is not a chunk
+     */
+    public static AnvilChunkDecoder decode(DataInput in) throws IOException {
+        AnvilChunkDecoder decoder = new AnvilChunkDecoder(in);
+        decoder.readRoot();
+        return decoder;
+    }
+
+    private static byte[] name(String name) {
+        // Modified UTF-8 is the same as ASCII for these
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The sections of the chunk, indexed by their y
+     *
+     * @return the sections, with {@code null} for those that were not saved
+     */
+    public ChunkSection[] sections() {
+        return sections;
+    }
+
+    /**
+     * The height map of the chunk
+     *
+     * @return the heights, or {@code null} if there were none
+     */
+    public int[] heights() {
+        return heights;
+    }
+
+    public long lastUpdate() {
+        return lastUpdate;
+    }
+
+    public byte lightPopulated() {
+        return lightPopulated;
+    }
+
+    public byte terrainPopulated() {
+        return terrainPopulated;
+    }
+
+    public long inhabitedTime() {
+        return inhabitedTime;
+    }
+
+    private void readRoot() throws IOException {
+        if (in.readByte() != TAG_COMPOUND) {
+            throw new IOException("Chunk does not start with a compound tag");
+        }
+        skipFully(in.readUnsignedShort());
+
+        int type;
+        while ((type = in.readByte()) != TAG_END) {
+            readName();
+            if (type == TAG_COMPOUND && nameIs(LEVEL)) {
+                readLevel();
+            } else {
+                skip(type);
+            }
+        }
+    }
+
+    private void readLevel() throws IOException {
+        int type;
+        while ((type = in.readByte()) != TAG_END) {
+            readName();
+            if (type == TAG_LONG && nameIs(LAST_UPDATE)) {
+                lastUpdate = in.readLong();
+            } else if (type == TAG_BYTE && nameIs(LIGHT_POPULATED)) {
+                lightPopulated = in.readByte();
+            } else if (type == TAG_BYTE && nameIs(TERRAIN_POPULATED)) {
+                terrainPopulated = in.readByte();
+            } else if (type == TAG_LONG && nameIs(INHABITED_TIME)) {
+                inhabitedTime = in.readLong();
+            } else if (type == TAG_INT_ARRAY && nameIs(HEIGHT_MAP)) {
+                int[] heights = new int[in.readInt()];
+                for (int i = 0; i < heights.length; i++) {
+                    heights[i] = in.readInt();
+                }
+                this.heights = heights;
+            } else if (type == TAG_LIST && nameIs(SECTIONS)) {
+                int elementType = in.readByte();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    if (elementType == TAG_COMPOUND) {
+                        readSection();
+                    } else {
+                        skip(elementType);
+                    }
+                }
+            } else {
+                skip(type);
+            }
+        }
+    }
+
+    private void readSection() throws IOException {
+        int y = -1;
+        boolean hasBlocks = false;
+        boolean hasAdd = false;
+        byte[] data = null;
+        byte[] blockLight = null;
+        byte[] skyLight = null;
+
+        int type;
+        while ((type = in.readByte()) != TAG_END) {
+            readName();
+            if (type == TAG_BYTE && nameIs(Y)) {
+                y = in.readByte();
+            } else if (type == TAG_BYTE_ARRAY && nameIs(BLOCKS)) {
+                hasBlocks = readInto(blocks);
+            } else if (type == TAG_BYTE_ARRAY && nameIs(ADD)) {
+                hasAdd = readInto(add);
+            } else if (type == TAG_BYTE_ARRAY && nameIs(DATA)) {
+                data = readNibbles();
+            } else if (type == TAG_BYTE_ARRAY && nameIs(BLOCK_LIGHT)) {
+                blockLight = readNibbles();
+            } else if (type == TAG_BYTE_ARRAY && nameIs(SKY_LIGHT)) {
+                skyLight = readNibbles();
+            } else {
+                skip(type);
+            }
+        }
+
+        if (y < 0 || y >= sections.length) {
+            return;
+        }
+
+        ChunkSection section = new ChunkSection((byte) y);
+        section.data = data;
+        section.blockLight = blockLight;
+        section.skyLight = skyLight;
+        section.loadBlocks(hasBlocks ? blocks : null, hasAdd ? add : null);
+        sections[y] = section;
+    }
+
+    // Reads a byte array of the exact length of the target into it, other lengths are skipped
+    private boolean readInto(byte[] target) throws IOException {
+        int length = in.readInt();
+        if (length != target.length) {
+            skipFully(length);
+            return false;
+        }
+
+        in.readFully(target);
+        return true;
+    }
+
+    private byte[] readNibbles() throws IOException {
+        byte[] nibbles = new byte[ChunkSection.LENGTH / 2];
+        return readInto(nibbles) ? nibbles : null;
+    }
+
+    private void readName() throws IOException {
+        int length = in.readUnsignedShort();
+        if (length > name.length) {
+            name = new byte[length];
+        }
+
+        in.readFully(name, 0, length);
+        nameLength = length;
+    }
+
+    private boolean nameIs(byte[] expected) {
+        if (expected.length != nameLength) {
+            return false;
+        }
+
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Moves past the payload of a tag of the given type without keeping it
+    private void skip(int type) throws IOException {
+        switch (type) {
+            case TAG_BYTE:
+                skipFully(1);
+                break;
+            case TAG_SHORT:
+                skipFully(2);
+                break;
+            case TAG_INT:
+            case TAG_FLOAT:
+                skipFully(4);
+                break;
+            case TAG_LONG:
+            case TAG_DOUBLE:
+                skipFully(8);
+                break;
+            case TAG_BYTE_ARRAY:
+                skipFully(in.readInt());
+                break;
+            case TAG_STRING:
+                skipFully(in.readUnsignedShort());
+                break;
+            case TAG_LIST:
+                int elementType = in.readByte();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    skip(elementType);
+                }
+                break;
+            case TAG_COMPOUND:
+                int element;
+                while ((element = in.readByte()) != TAG_END) {
+                    skipFully(in.readUnsignedShort());
+                    skip(element);
+                }
+                break;
+            case TAG_INT_ARRAY:
+                skipFully(in.readInt() * 4);
+                break;
+            case TAG_LONG_ARRAY:
+                skipFully(in.readInt() * 8);
+                break;
+            case TAG_END:
+                break;
+            default:
+                throw new IOException("Unknown tag type " + type);
+        }
+    }
+
+    private void skipFully(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Negative tag length " + count);
+        }
+
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped <= 0) {
+                // Some streams only skip what is buffered, reading fails properly at the end
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
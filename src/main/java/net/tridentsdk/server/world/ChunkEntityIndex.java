@@ -0,0 +1,169 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import com.google.common.collect.Sets;
+import net.tridentsdk.base.BoundingBox;
+import net.tridentsdk.base.Position;
+import net.tridentsdk.entity.Entity;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The entities in a chunk, bucketed by the 16 block high section that they stand in
+ *
+ * <p>Queries only visit the buckets that overlap the area searched, so looking for entities near a position costs
+ * in proportion to the entities around it, not the entities in the world.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public final class ChunkEntityIndex {
+    /**
+     * The distance outside of the queried area that entities are still looked for, as the area is matched against
+     * the entity's bounding box while it is bucketed by its position
+     */
+    public static final double MARGIN = 2.0D;
+
+    private final Set<Entity> entities = Sets.newConcurrentHashSet();
+    private final Set<Entity>[] sections;
+
+    @SuppressWarnings("unchecked")
+    public ChunkEntityIndex() {
+        sections = new Set[16];
+        for (int i = 0; i < 16; i++) {
+            sections[i] = Sets.newConcurrentHashSet();
+        }
+    }
+
+    /**
+     * Obtains the bucket that an entity at the given height is kept in
+     *
+     * @param y the y coordinate
+     * @return the section index, entities above or below the world are kept in the top or bottom section
+     */
+    public static int section(double y) {
+        return Math.max(0, Math.min(15, (int) Math.floor(y) >> 4));
+    }
+
+    /**
+     * The entities in the chunk
+     *
+     * @return the live set of entities
+     */
+    public Set<Entity> entities() {
+        return entities;
+    }
+
+    /**
+     * Adds an entity standing at the given height
+     *
+     * @param entity the entity
+     * @param y      the y coordinate of the entity
+     */
+    public void add(Entity entity, double y) {
+        entities.add(entity);
+        sections[section(y)].add(entity);
+    }
+
+    /**
+     * Removes an entity that was last moved to the given height
+     *
+     * @param entity the entity
+     * @param y      the y coordinate the entity was last added or moved at
+     * @return {@code true} if the entity was in this chunk
+     */
+    public boolean remove(Entity entity, double y) {
+        boolean removed = entities.remove(entity);
+        if (!sections[section(y)].remove(entity)) {
+            // Moved concurrently, search the other buckets so it is not left behind
+            for (Set<Entity> section : sections) {
+                section.remove(entity);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Moves an entity in this chunk to the bucket for its new height
+     *
+     * @param entity the entity
+     * @param fromY  the y coordinate the entity was at
+     * @param toY    the y coordinate the entity is now at
+     */
+    public void move(Entity entity, double fromY, double toY) {
+        int from = section(fromY);
+        int to = section(toY);
+        if (from != to) {
+            sections[to].add(entity);
+            sections[from].remove(entity);
+        }
+    }
+
+    /**
+     * Collects the entities whose bounding boxes collide with the given box
+     *
+     * @param exclude   the entity to leave out, or {@code null}
+     * @param box       the area to search
+     * @param predicate the filter for the entities, or {@code null}
+     * @param out       the collection to add the entities found to
+     */
+    public void collect(Entity exclude, BoundingBox box, Predicate<? super Entity> predicate,
+                        Collection<? super Entity> out) {
+        int max = section(box.maxY() + MARGIN);
+        for (int i = section(box.minY() - MARGIN); i <= max; i++) {
+            for (Entity entity : sections[i]) {
+                if (entity != exclude && entity.boundingBox().collidesWith(box)
+                        && (predicate == null || predicate.test(entity))) {
+                    out.add(entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the entities whose position is within the given distance of a point
+     *
+     * @param x         the x coordinate of the point
+     * @param y         the y coordinate of the point
+     * @param z         the z coordinate of the point
+     * @param radius    the distance from the point
+     * @param predicate the filter for the entities, or {@code null}
+     * @param out       the collection to add the entities found to
+     */
+    public void collectInRange(double x, double y, double z, double radius, Predicate<? super Entity> predicate,
+                               Collection<? super Entity> out) {
+        double squared = radius * radius;
+        int max = section(y + radius);
+        for (int i = section(y - radius); i <= max; i++) {
+            for (Entity entity : sections[i]) {
+                Position position = entity.position();
+                double dx = position.x() - x;
+                double dy = position.y() - y;
+                double dz = position.z() - z;
+                if (dx * dx + dy * dy + dz * dz <= squared && (predicate == null || predicate.test(entity))) {
+                    out.add(entity);
+                }
+            }
+        }
+    }
+}
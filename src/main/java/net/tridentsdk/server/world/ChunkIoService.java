@@ -0,0 +1,324 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.concurrent.ScheduledRunnable;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.registry.Registered;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.util.TridentLogger;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads and writes the chunks of a world, writing saves behind on the I/O executor
+ *
+ * <p>A chunk saved again before its previous save was written only keeps the latest state, which is the only one
+ * serialized and compressed. Queued chunks are written in batches per region file, and at most one batch runs for
+ * a region at a time so writes of the same chunk are never reordered. Loads of a chunk that is waiting to be
+ * written are restored from the queued save's snapshots, without building its tag.</p>
+ *
+ * <p>After a batch, the region file is compacted if too much of it is space left behind by chunks that grew.</p>
+ *
+ * <p>A chunk stays queued until it has been written. If a region can't be opened or a chunk can't be written, the
+ * region is retried later, waiting twice as long after each failure in a row.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class ChunkIoService {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int COMPACTION_PERCENT = tridentCfg.getInt("region-compaction-threshold-percent", 50);
+    // Files with less free space than this are not worth rewriting
+    private static final int COMPACTION_MIN_SECTORS = 32;
+    // Ticks before a failed region is retried, doubled on each failure in a row up to the maximum
+    private static final long RETRY_TICKS = 20;
+    private static final long MAX_RETRY_TICKS = 1200;
+
+    private final TridentWorldLoader loader;
+    private final ConcurrentMap<ChunkLocation, ChunkSave> pending = new ConcurrentHashMap<>();
+    // The chunks waiting to be written, by region, a region is removed once it has none left
+    private final ConcurrentMap<Long, Set<ChunkLocation>> regions = new ConcurrentHashMap<>();
+    // Regions with a batch queued or being written
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    // Failures in a row of the regions waiting to be retried
+    private final ConcurrentMap<Long, Integer> failures = new ConcurrentHashMap<>();
+
+    ChunkIoService(TridentWorldLoader loader) {
+        this.loader = loader;
+    }
+
+    private static long regionKey(ChunkLocation location) {
+        return (long) (location.x() >> 5) << 32 | (location.z() >> 5) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Queues the chunk to be written, replacing the save that is still waiting for it if there is one
+     *
+     * @param location the chunk location
+     * @param save     the captured state of the chunk, serialized on the I/O executor when it is written
+     */
+    public void save(ChunkLocation location, ChunkSave save) {
+        pending.put(location, save);
+
+        long key = regionKey(location);
+        // Added while holding the key, so a batch can't remove the region from under it
+        regions.compute(key, (k, queued) -> {
+            if (queued == null) {
+                queued = ConcurrentHashMap.newKeySet();
+            }
+            queued.add(location);
+            return queued;
+        });
+        schedule(key);
+    }
+
+    private void schedule(long key) {
+        // A failed region is only written again once its retry is due
+        if (!failures.containsKey(key) && scheduled.add(key)) {
+            ThreadsHandler.ioExecutor().execute(() -> drain(key));
+        }
+    }
+
+    private void retryLater(long key) {
+        int attempts = failures.merge(key, 1, Integer::sum);
+        long delay = Math.min(RETRY_TICKS << Math.min(attempts - 1, 6), MAX_RETRY_TICKS);
+        Registered.tasks().asyncLater(null, new ScheduledRunnable() {
+            @Override
+            public void run() {
+                if (scheduled.add(key)) {
+                    ThreadsHandler.ioExecutor().execute(() -> drain(key));
+                }
+            }
+        }, delay);
+    }
+
+    /**
+     * Loads the saved chunk into the given chunk, from the queue if it hasn't been written yet
+     *
+     * @param chunk the chunk to load
+     * @return {@code true} if the chunk was saved and has been loaded
+     */
+    public boolean load(TridentChunk chunk) {
+        ChunkLocation location = chunk.location();
+
+        // The copy on disk is out of date until the pending save is written
+        ChunkSave save = pending.get(location);
+        if (save != null) {
+            chunk.load(save);
+            return true;
+        }
+
+        RegionFile region = RegionCache.instance().acquire(loader.world.name(), location, false);
+        if (region == null) {
+            return false;
+        }
+
+        try {
+            return region.hasChunk(location) && region.loadChunkData(chunk);
+        } finally {
+            RegionCache.instance().release(region);
+        }
+    }
+
+    /**
+     * Whether or not the chunk was saved, or is waiting to be
+     *
+     * @param location the chunk location
+     * @return {@code true} if the chunk can be read
+     */
+    public boolean exists(ChunkLocation location) {
+        if (pending.containsKey(location)) {
+            return true;
+        }
+
+        RegionFile region = RegionCache.instance().acquire(loader.world.name(), location, false);
+        if (region == null) {
+            return false;
+        }
+
+        try {
+            return region.hasChunk(location);
+        } finally {
+            RegionCache.instance().release(region);
+        }
+    }
+
+    /**
+     * The amount of chunks waiting to be written
+     *
+     * @return the queue size
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes every queued chunk, returning once they are all on disk
+     *
+     * <p>Regions not being written by the I/O executor are written on the calling thread, including the ones waiting
+     * to be retried. A region that fails again is left queued for its next retry instead of being waited on.</p>
+     */
+    public void flush() {
+        Set<Long> failed = new HashSet<>();
+        while (true) {
+            boolean waiting = false;
+            for (Long key : regions.keySet()) {
+                Set<ChunkLocation> queued = regions.get(key);
+                if (failed.contains(key) || queued == null || queued.isEmpty()) {
+                    continue;
+                }
+
+                waiting = true;
+                if (scheduled.add(key) && !drain(key)) {
+                    failed.add(key);
+                }
+            }
+
+            if (!waiting) {
+                break;
+            }
+
+            // The rest is being written by the executor
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        if (!failed.isEmpty()) {
+            TridentLogger.get().warn("Could not write the chunks of " + failed.size() + " regions of " +
+                    loader.world.name() + ", they stay queued to be retried");
+        }
+    }
+
+    // Returns false if the batch failed and the region is waiting to be retried
+    private boolean drain(long key) {
+        boolean failed = false;
+        try {
+            Set<ChunkLocation> queued = regions.get(key);
+            if (queued == null) {
+                return true;
+            }
+
+            Iterator<ChunkLocation> it = queued.iterator();
+            if (!it.hasNext()) {
+                return true;
+            }
+
+            ChunkLocation location = it.next();
+            RegionFile region;
+            try {
+                region = RegionCache.instance().acquire(loader.world.name(), location, true);
+            } catch (Exception e) {
+                // The chunks stay queued until the region can be opened
+                TridentLogger.get().error(e);
+                failed = true;
+                return false;
+            }
+
+            List<ChunkLocation> unwritten = new ArrayList<>();
+            try {
+                while (true) {
+                    queued.remove(location);
+                    if (!write(region, location)) {
+                        unwritten.add(location);
+                    }
+
+                    if (!it.hasNext()) {
+                        break;
+                    }
+                    location = it.next();
+                }
+
+                // One journal sync for the whole batch
+                region.commit();
+                compactIfFragmented(region);
+            } finally {
+                RegionCache.instance().release(region);
+
+                // Queued again so that the retry writes them, or the newer save that replaced them
+                queued.addAll(unwritten);
+            }
+
+            failed = !unwritten.isEmpty();
+            return !failed;
+        } finally {
+            if (failed) {
+                // Counted as failed before saves can schedule it again
+                retryLater(key);
+                scheduled.remove(key);
+            } else {
+                failures.remove(key);
+                regions.computeIfPresent(key, (k, queued) -> queued.isEmpty() ? null : queued);
+                scheduled.remove(key);
+
+                // Chunks queued after the batch passed them
+                Set<ChunkLocation> queued = regions.get(key);
+                if (queued != null && !queued.isEmpty()) {
+                    schedule(key);
+                }
+            }
+        }
+    }
+
+    // Rewrites the region once enough of it is space left behind by chunks that grew
+    private static void compactIfFragmented(RegionFile region) {
+        if (COMPACTION_PERCENT <= 0) {
+            return;
+        }
+
+        int fileSectors = region.fileSectors();
+        int free = fileSectors - region.usedSectors();
+        if (free >= COMPACTION_MIN_SECTORS && free * 100 >= fileSectors * COMPACTION_PERCENT) {
+            try {
+                region.compact();
+            } catch (IOException e) {
+                TridentLogger.get().error(e);
+            }
+        }
+    }
+
+    // Returns false if the chunk could not be written and is still pending
+    private boolean write(RegionFile region, ChunkLocation location) {
+        ChunkSave save = pending.get(location);
+        if (save == null) {
+            return true;
+        }
+
+        try {
+            region.writeChunkData(location, save.asNbt());
+        } catch (Exception e) {
+            TridentLogger.get().error(e);
+            return false;
+        }
+
+        // A newer save keeps its place in the queue and is written by the next batch
+        pending.remove(location, save);
+        return true;
+    }
+}
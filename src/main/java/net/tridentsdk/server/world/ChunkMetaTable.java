@@ -0,0 +1,258 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import com.google.common.collect.Lists;
+import net.tridentsdk.meta.block.BlockMeta;
+import net.tridentsdk.meta.block.Tile;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The block metadata of a chunk, keyed by the block's position packed into a short
+ *
+ * <p>Positions are packed as {@code y << 8 | z << 4 | x} into an open-addressing table, so looking up the metas
+ * of a block creates no key objects. Tiles are also kept in a separate list so that iterating them does not visit
+ * every block that has metadata.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public final class ChunkMetaTable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    @GuardedBy("this")
+    private short[] keys = new short[INITIAL_CAPACITY];
+    // A null value is an empty slot
+    @GuardedBy("this")
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    // Read without the lock so chunks without metadata skip it entirely
+    private volatile int size;
+
+    private final List<Tile> tiles = new CopyOnWriteArrayList<>();
+
+    /**
+     * Packs the given position into the key used by this table
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the packed position
+     */
+    public static short key(int x, int y, int z) {
+        return (short) ((y & 0xFF) << 8 | (z & 15) << 4 | (x & 15));
+    }
+
+    /**
+     * Obtains the metas applied to the block at the given position
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the metas, or {@code null} if the block has none
+     */
+    @SuppressWarnings("unchecked")
+    public List<BlockMeta> get(int x, int y, int z) {
+        if (size == 0) {
+            return null;
+        }
+
+        short key = key(x, y, z);
+        synchronized (this) {
+            int slot = find(key);
+            return slot < 0 ? null : (List<BlockMeta>) values[slot];
+        }
+    }
+
+    /**
+     * Applies the given metas to the block at the given position, in addition to those it already has
+     *
+     * @param x     the x coordinate, only the position inside the chunk is used
+     * @param y     the y coordinate
+     * @param z     the z coordinate, only the position inside the chunk is used
+     * @param metas the metas to add
+     */
+    @SuppressWarnings("unchecked")
+    public void add(int x, int y, int z, BlockMeta... metas) {
+        short key = key(x, y, z);
+        synchronized (this) {
+            int slot = find(key);
+            List<BlockMeta> list;
+            if (slot < 0) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    resize(keys.length * 2);
+                }
+
+                list = Lists.newCopyOnWriteArrayList();
+                slot = ~find(key);
+                keys[slot] = key;
+                values[slot] = list;
+                size++;
+            } else {
+                list = (List<BlockMeta>) values[slot];
+            }
+
+            Collections.addAll(list, metas);
+        }
+
+        for (BlockMeta meta : metas) {
+            if (meta instanceof Tile) {
+                tiles.add((Tile) meta);
+            }
+        }
+    }
+
+    /**
+     * Removes all metas from the block at the given position
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the removed metas, or {@code null} if the block had none
+     */
+    @SuppressWarnings("unchecked")
+    public List<BlockMeta> remove(int x, int y, int z) {
+        if (size == 0) {
+            return null;
+        }
+
+        short key = key(x, y, z);
+        List<BlockMeta> removed;
+        synchronized (this) {
+            int slot = find(key);
+            if (slot < 0) {
+                return null;
+            }
+
+            removed = (List<BlockMeta>) values[slot];
+            delete(slot);
+            size--;
+        }
+
+        for (BlockMeta meta : removed) {
+            if (meta instanceof Tile) {
+                tiles.remove(meta);
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Whether or not any block in the chunk has metadata
+     *
+     * @return {@code true} if there is no metadata
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Obtains the tiles in the chunk
+     *
+     * <p>The returned collection is a read-only view, iterating it does not lock the table.</p>
+     *
+     * @return the tiles
+     */
+    public Collection<Tile> tiles() {
+        return Collections.unmodifiableList(tiles);
+    }
+
+    /**
+     * Copies this table, the lists of metas are copied but the metas themselves are shared
+     *
+     * @return the new table
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized ChunkMetaTable copy() {
+        ChunkMetaTable copy = new ChunkMetaTable();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                copy.values[i] = Lists.newCopyOnWriteArrayList((List<BlockMeta>) values[i]);
+            }
+        }
+
+        copy.size = size;
+        copy.tiles.addAll(tiles);
+        return copy;
+    }
+
+    // The slot holding the key, or the inverted index of the empty slot where it would go
+    @GuardedBy("this")
+    private int find(short key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return ~slot;
+    }
+
+    // Backward shift deletion, keeps the probe sequences of the following keys intact without tombstones
+    @GuardedBy("this")
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // Move the entry back if its home slot does not lie between the gap and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        values[gap] = null;
+    }
+
+    @GuardedBy("this")
+    private void resize(int capacity) {
+        short[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new short[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = ~find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(short key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
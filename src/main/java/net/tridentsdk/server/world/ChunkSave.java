@@ -0,0 +1,113 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.meta.nbt.*;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+
+/**
+ * The state of a chunk captured to be saved
+ *
+ * <p>The sections are held as snapshots, so the chunk can keep being modified while the save is serialized and
+ * written on another thread. A chunk loaded while its save is still waiting to be written is restored from the
+ * snapshots, without building the tag.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@Immutable
+public final class ChunkSave {
+    private final SectionSnapshot[] sections;
+    private final int[] heights;
+    private final long lastUpdate;
+    private final byte lightPopulated;
+    private final byte terrainPopulated;
+    private final long inhabitedTime;
+    private final List<CompoundTag> entities;
+
+    ChunkSave(SectionSnapshot[] sections, int[] heights, long lastUpdate, byte lightPopulated,
+              byte terrainPopulated, long inhabitedTime, List<CompoundTag> entities) {
+        this.sections = sections;
+        this.heights = heights;
+        this.lastUpdate = lastUpdate;
+        this.lightPopulated = lightPopulated;
+        this.terrainPopulated = terrainPopulated;
+        this.inhabitedTime = inhabitedTime;
+        this.entities = entities;
+    }
+
+    SectionSnapshot section(int y) {
+        return sections[y];
+    }
+
+    int[] heights() {
+        return heights;
+    }
+
+    long lastUpdate() {
+        return lastUpdate;
+    }
+
+    byte lightPopulated() {
+        return lightPopulated;
+    }
+
+    byte terrainPopulated() {
+        return terrainPopulated;
+    }
+
+    long inhabitedTime() {
+        return inhabitedTime;
+    }
+
+    /**
+     * Builds the chunk tag, without locking the chunk
+     *
+     * @return the chunk tag
+     */
+    public CompoundTag asNbt() {
+        CompoundTag root = new CompoundTag("root");
+        CompoundTag level = new CompoundTag("Level");
+
+        level.addTag(new LongTag("LastUpdate").setValue(lastUpdate));
+        level.addTag(new ByteTag("LightPopulated").setValue(lightPopulated));
+        level.addTag(new ByteTag("TerrainPopulated").setValue(terrainPopulated));
+
+        level.addTag(new LongTag("InhabitedTime").setValue(inhabitedTime));
+        level.addTag(new IntArrayTag("HeightMap").setValue(heights));
+
+        ListTag sectionTags = new ListTag("Sections", TagType.COMPOUND);
+        for (SectionSnapshot snapshot : sections) {
+            // Empty sections are kept for their light, such as caves under the ground
+            if (!snapshot.isEmpty() || snapshot.hasLight()) {
+                sectionTags.addTag(snapshot.asNbt());
+            }
+        }
+
+        level.addTag(sectionTags);
+
+        ListTag tag = new ListTag("Entities", TagType.COMPOUND);
+        entities.forEach(tag::addTag);
+        level.addTag(tag);
+
+        root.addTag(level);
+
+        return root;
+    }
+}
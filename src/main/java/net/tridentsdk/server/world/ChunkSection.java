@@ -23,24 +23,39 @@ import net.tridentsdk.meta.nbt.TagType;
 import net.tridentsdk.util.NibbleArray;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ChunkSection implements NBTSerializable {
     public static final int LENGTH = 4096; // 16^3 (width * height * depth)
 
     @NBTField(name = "Blocks", type = TagType.BYTE_ARRAY)
-    public byte[] rawTypes = new byte[LENGTH];
+    public byte[] rawTypes;
     @NBTField(name = "Add", type = TagType.BYTE_ARRAY)
-    public byte[] add = new byte[LENGTH / 2];
+    public byte[] add;
     @NBTField(name = "Data", type = TagType.BYTE_ARRAY)
-    public byte[] data = new byte[LENGTH / 2];
+    public byte[] data;
     @NBTField(name = "BlockLight", type = TagType.BYTE_ARRAY)
-    public byte[] blockLight = new byte[LENGTH / 2];
+    public byte[] blockLight;
     @NBTField(name = "SkyLight", type = TagType.BYTE_ARRAY)
-    public byte[] skyLight = new byte[LENGTH / 2];
+    public byte[] skyLight;
     @NBTField(name = "Y", type = TagType.BYTE)
     protected byte y;
     public char[] types;
 
+    // Amount of blocks in this section that are not air
+    // Sections without any are not allocated, sent or saved, unless they hold light
+    // An empty section only goes without a sky light array while all of it is lit by the sky
+    private int nonAir;
+
+    // Bumped on every change, the section is dirty until a save is taken of the current version
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile int savedVersion;
+
+    // Set when a snapshot shares the block arrays, the next write copies them first
+    // Block arrays are only written with the section lock held, light only by the light engine without it, so
+    // snapshots copy the light arrays instead of sharing them
+    private boolean sharedBlocks;
+
     public ChunkSection(byte i) {
         this.y = i;
     }
@@ -56,15 +71,317 @@ public final class ChunkSection implements NBTSerializable {
         return y;
     }
 
+    /**
+     * Whether or not this section only contains air
+     *
+     * @return {@code true} if the section has no blocks in it
+     */
+    public boolean isEmpty() {
+        return nonAir == 0;
+    }
+
+    /**
+     * Obtains the amount of blocks that are not air in this section
+     *
+     * @return the non-air block count
+     */
+    public int nonAir() {
+        return nonAir;
+    }
+
+    /**
+     * Obtains the packed type at the given index, without allocating the section
+     *
+     * @param index the block array index
+     * @return the block id shifted left by 4 with the data in the lower nibble
+     */
+    public char typeAt(int index) {
+        char[] types = this.types;
+        return types == null ? 0 : types[index];
+    }
+
+    /**
+     * Sets the packed type at the given index, allocating the section if necessary
+     *
+     * @param index the block array index
+     * @param type  the block id shifted left by 4 with the data in the lower nibble
+     */
+    public void setType(int index, char type) {
+        unshareBlocks();
+        allocate();
+        version.incrementAndGet();
+
+        char old = types[index];
+        types[index] = type;
+        NibbleArray.set(data, index, (byte) (type & 0xF));
+
+        boolean wasAir = (old >> 4) == 0;
+        boolean isAir = (type >> 4) == 0;
+        if (wasAir && !isAir) {
+            nonAir++;
+        } else if (!wasAir && isAir) {
+            nonAir--;
+        }
+    }
+
+    /**
+     * Whether or not the section has changed since it was last saved
+     *
+     * @return {@code true} if the section needs to be saved
+     */
+    public boolean isDirty() {
+        return version.get() != savedVersion;
+    }
+
+    /**
+     * Marks the section as changed, so that it is written on the next save
+     */
+    public void markDirty() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Takes an immutable view of the section that shares its block arrays until the next write
+     *
+     * <p>Must be called while holding the section lock. The light arrays are copied, as the light engine writes
+     * them without the lock.</p>
+     *
+     * @return the section snapshot
+     */
+    public SectionSnapshot snapshot() {
+        sharedBlocks = true;
+
+        return new SectionSnapshot(y, types, copy(blockLight), copy(skyLight), nonAir, version.get());
+    }
+
+    /**
+     * Takes a snapshot to be saved, the section is no longer dirty unless it changes after this
+     *
+     * <p>Must be called while holding the section lock.</p>
+     *
+     * @return the section snapshot
+     */
+    public SectionSnapshot saveSnapshot() {
+        SectionSnapshot snapshot = snapshot();
+        savedVersion = snapshot.version();
+        return snapshot;
+    }
+
+    /**
+     * Replaces the contents of this section with the arrays of a snapshot, the block arrays are shared until the
+     * next write and the light arrays are copied
+     *
+     * <p>Must be called while holding the section lock.</p>
+     */
+    void restore(char[] types, byte[] blockLight, byte[] skyLight, int nonAir) {
+        this.types = types;
+        this.blockLight = copy(blockLight);
+        this.skyLight = copy(skyLight);
+        this.rawTypes = null;
+        this.add = null;
+        this.data = null;
+        if (types != null) {
+            this.data = new byte[LENGTH / 2];
+            for (int i = 0; i < LENGTH; i++) {
+                NibbleArray.set(this.data, i, (byte) (types[i] & 0xF));
+            }
+        }
+
+        this.nonAir = nonAir;
+        sharedBlocks = true;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Whether or not this section stores any light
+     *
+     * @return {@code true} if a light array is allocated
+     */
+    public boolean hasLight() {
+        return blockLight != null || skyLight != null;
+    }
+
+    /**
+     * Obtains a light array to write to, which is never shared with a snapshot
+     *
+     * <p>Only to be used by the light engine. If the section has none, the array is allocated with the light of an
+     * empty section: full sky light, since it was open to the sky, and no block light.</p>
+     *
+     * @param sky {@code true} for the sky light array, {@code false} for block light
+     * @return the light array
+     */
+    public byte[] writableLight(boolean sky) {
+        byte[] array = sky ? skyLight : blockLight;
+        return array == null ? allocateLight(sky) : array;
+    }
+
+    /**
+     * Copies a light array of this section, one holding the light of an empty section if there is none
+     *
+     * @param sky {@code true} for the sky light array, {@code false} for block light
+     * @return the copy of the light array
+     */
+    public byte[] copyLight(boolean sky) {
+        byte[] array = sky ? skyLight : blockLight;
+        if (array != null) {
+            return array.clone();
+        }
+
+        byte[] empty = new byte[LENGTH / 2];
+        if (sky) {
+            Arrays.fill(empty, (byte) 255);
+        }
+        return empty;
+    }
+
+    // Synchronized as the light engine allocates without the section lock
+    private synchronized byte[] allocateLight(boolean sky) {
+        if (!sky) {
+            if (blockLight == null) {
+                blockLight = new byte[LENGTH / 2];
+            }
+            return blockLight;
+        }
+
+        if (skyLight == null) {
+            byte[] array = new byte[LENGTH / 2];
+            // Nothing stored means the sky reaches all of the section
+            Arrays.fill(array, (byte) 255);
+            skyLight = array;
+        }
+        return skyLight;
+    }
+
+    private static byte[] copy(byte[] array) {
+        return array == null ? null : array.clone();
+    }
+
+    private void unshareBlocks() {
+        if (sharedBlocks) {
+            sharedBlocks = false;
+            if (types != null) types = types.clone();
+            if (data != null) data = data.clone();
+        }
+    }
+
+    /**
+     * Makes sure that the block and light arrays exist so that they can be written to
+     */
+    public void allocate() {
+        if (types == null) {
+            types = new char[LENGTH];
+        }
+
+        if (data == null) {
+            data = new byte[LENGTH / 2];
+        }
+
+        if (blockLight == null) {
+            allocateLight(false);
+        }
+
+        if (skyLight == null) {
+            allocateLight(true);
+        }
+    }
+
+    /**
+     * Releases the arrays held by this section if it is empty, so empty sections take up no memory
+     *
+     * <p>The light arrays are kept unless they hold the same light as no array would, such as under the ground.</p>
+     */
+    public void trim() {
+        if (nonAir != 0) {
+            return;
+        }
+
+        types = null;
+        rawTypes = null;
+        add = null;
+        data = null;
+
+        synchronized (this) {
+            if (filledWith(blockLight, (byte) 0)) {
+                blockLight = null;
+            }
+
+            if (filledWith(skyLight, (byte) 255)) {
+                skyLight = null;
+            }
+        }
+    }
+
+    private static boolean filledWith(byte[] array, byte value) {
+        if (array == null) {
+            return true;
+        }
+
+        for (byte b : array) {
+            if (b != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the amount of heap memory taken up by the arrays in this section
+     *
+     * <p>This does not lock the section, so the result may be slightly off while it is being modified.</p>
+     *
+     * @return the approximate size of this section, in bytes
+     */
+    public long footprint() {
+        long size = 0;
+        size += types == null ? 0 : types.length * 2;
+        size += length(rawTypes) + length(add) + length(data) + length(blockLight) + length(skyLight);
+        return size;
+    }
+
+    private static int length(byte[] array) {
+        return array == null ? 0 : array.length;
+    }
+
+    /**
+     * Recounts the non-air blocks from the type array
+     */
+    protected void recount() {
+        int count = 0;
+        char[] types = this.types;
+        if (types != null) {
+            for (char type : types) {
+                if ((type >> 4) != 0) {
+                    count++;
+                }
+            }
+        }
+
+        nonAir = count;
+    }
+
     protected void loadBlocks() {
-        //NibbleArray add = new NibbleArray(this.add);
-        //NibbleArray data = new NibbleArray(this.data);
-        
-        // DEBUG ===== makes the entire chunk completely lit, not ideal for production
-        Arrays.fill(skyLight, (byte) 255);
-        // =====
+        loadBlocks(rawTypes, add);
+
+        // The types hold everything, the raw arrays are rebuilt when saving
+        rawTypes = null;
+        add = null;
+    }
+
+    /**
+     * Builds the packed types from the block ids, their add nibbles and the data nibbles of this section
+     *
+     * @param blocks the block ids, or {@code null} if the section is empty
+     * @param add    the upper nibbles of the block ids, or {@code null} if there are none
+     */
+    void loadBlocks(byte[] blocks, byte[] add) {
+        if (blocks == null) {
+            nonAir = 0;
+            trim();
+            return;
+        }
 
-        types = new char[rawTypes.length];
+        types = new char[LENGTH];
+        allocate();
 
         for (int i = 0; i < LENGTH; i += 1) {
             byte b;
@@ -72,12 +389,15 @@ public final class ChunkSection implements NBTSerializable {
             int bAdd;
 
             /* Get block data; use extras accordingly */
-            b = rawTypes[i];
-            bAdd = NibbleArray.get(this.add, i) << 12;
+            b = blocks[i];
+            bAdd = add == null ? 0 : NibbleArray.get(add, i) << 12;
             bData = NibbleArray.get(this.data, i);
 
             types[i] = (char) (bAdd | ((b & 0xff) << 4) | bData);
         }
+
+        recount();
+        trim();
     }
 
     protected void updateRaw() {
@@ -88,6 +408,15 @@ public final class ChunkSection implements NBTSerializable {
         if(data.length != LENGTH)
             throw new IllegalArgumentException("Data length must be 4096!");
 
+        allocate();
+        if (rawTypes == null) {
+            rawTypes = new byte[LENGTH];
+        }
+
+        if (add == null) {
+            add = new byte[LENGTH / 2];
+        }
+
         for (int i = 0; i < LENGTH; i++) {
             rawTypes[i] = (byte) ((data[i] >> 4) & 0xFF);
             NibbleArray.set(this.data, i, (byte) (data[i] & 0xf));
@@ -96,14 +425,19 @@ public final class ChunkSection implements NBTSerializable {
     }
 
     protected void setBlocks(char[] data) {
+        unshareBlocks();
         this.types = data;
+        allocate();
+        version.incrementAndGet();
+        recount();
     }
 
     protected void setData(byte[] data) {
+        unshareBlocks();
         this.data = data;
     }
 
     public char[] types() {
         return types;
     }
-}
\ No newline at end of file
+}
@@ -17,13 +17,11 @@
 package net.tridentsdk.server.world;
 
 
-import com.google.common.collect.Lists;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import net.tridentsdk.meta.nbt.NBTSerializable;
 import net.tridentsdk.server.netty.Codec;
 
-import java.util.List;
+import java.util.Arrays;
 
 public class NewChunkSection implements NBTSerializable {
 
@@ -36,10 +34,26 @@ public class NewChunkSection implements NBTSerializable {
      */
     public static final int LIGHT_LENGTH = 16 * 16 * 16 / 2; // size * size * size / 2 (nibble bit count)
     /**
-     * Length of the block data array.
+     * The most bits per block a section palette may use before the global palette is used instead
      */
+    public static final int MAX_PALETTE_BITS = 8;
+    /**
+     * The bits per block used by the global palette
+     */
+    public static final int GLOBAL_BITS = 13;
+
+    private static final int MIN_PALETTE_BITS = 4;
+    private static final int EMPTY = -1;
+
+    // Open addressing map from block state -> palette index
+    // Slots are free when the key is EMPTY; block states are never negative
+    private int[] keys = newTable(16);
+    private int[] values = new int[16];
+    // Palette index -> block state
+    private int[] states = new int[16];
+    private int paletteSize;
+    private boolean direct;
 
-    private final List<Integer> palette = Lists.newArrayList();
     private final int[] blocks;
     private NibbleArray blockLight;
     private NibbleArray skyLight;
@@ -47,7 +61,7 @@ public class NewChunkSection implements NBTSerializable {
     public NewChunkSection() {
         this.blocks = new int[SIZE];
         this.blockLight = new NibbleArray(SIZE);
-        palette.add(0); // AIR
+        paletteIndex(0); // AIR
     }
 
     /**
@@ -72,10 +86,16 @@ public class NewChunkSection implements NBTSerializable {
      */
     public void setBlock(int idx, int type, int data) {
         int hash = type << 4 | (data & 0xF);
-        int index = palette.indexOf(hash);
-        if (index == -1) {
-            index = palette.size();
-            palette.add(hash);
+        if (direct) {
+            blocks[idx] = hash;
+            return;
+        }
+
+        int index = paletteIndex(hash);
+        if (direct) {
+            // The palette just overflowed, the index returned is the global id
+            blocks[idx] = hash;
+            return;
         }
 
         blocks[idx] = index;
@@ -104,6 +124,114 @@ public class NewChunkSection implements NBTSerializable {
         return z << 8 | y << 4 | x;
     }
 
+    /**
+     * Obtains the palette index of the given block state, adding it if it is not yet in the palette
+     *
+     * <p>If adding the state makes the palette exceed {@link #MAX_PALETTE_BITS}, the section is switched over to
+     * the global palette and the block array is rewritten to hold the raw states.</p>
+     */
+    private int paletteIndex(int state) {
+        int[] keys = this.keys;
+        int mask = keys.length - 1;
+        int slot = mix(state) & mask;
+        while (true) {
+            int key = keys[slot];
+            if (key == state) {
+                return values[slot];
+            }
+
+            if (key == EMPTY) {
+                break;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        int index = paletteSize;
+        if (index == 1 << MAX_PALETTE_BITS) {
+            promote();
+            return state;
+        }
+
+        if (index == states.length) {
+            states = Arrays.copyOf(states, index << 1);
+        }
+
+        states[index] = state;
+        keys[slot] = state;
+        values[slot] = index;
+        paletteSize = index + 1;
+
+        // Keep the load factor at or under one half
+        if (paletteSize << 1 > keys.length) {
+            rehash(keys.length << 1);
+        }
+
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] newKeys = newTable(capacity);
+        int[] newValues = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key == EMPTY) continue;
+
+            int slot = mix(key) & mask;
+            while (newKeys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            newKeys[slot] = key;
+            newValues[slot] = oldValues[i];
+        }
+
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private void promote() {
+        int[] states = this.states;
+        for (int i = 0; i < SIZE; i++) {
+            blocks[i] = states[blocks[i]];
+        }
+
+        direct = true;
+        keys = null;
+        values = null;
+        this.states = null;
+        paletteSize = 0;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int mix(int state) {
+        int h = state * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Obtains the amount of bits used to store each block
+     *
+     * @return the bits per block
+     */
+    public int bitsPerBlock() {
+        if (direct) {
+            return GLOBAL_BITS;
+        }
+
+        int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        return Math.max(MIN_PALETTE_BITS, bits);
+    }
+
     /**
      * Write the blocks to a buffer.
      *
@@ -112,20 +240,17 @@ public class NewChunkSection implements NBTSerializable {
      */
     public void writeBlocks(ByteBuf output) throws Exception {
         // Write bits per block
-        int bitsPerBlock = 4;
-        while (palette.size() > 1 << bitsPerBlock) {
-            bitsPerBlock += 1;
-        }
+        int bitsPerBlock = bitsPerBlock();
         long maxEntryValue = (1L << bitsPerBlock) - 1;
         output.writeByte(bitsPerBlock);
 
         // Write pallet (or not)
-        Codec.writeVarInt32(output, palette.size());
-        for (int mappedId : palette) {
-            Codec.writeVarInt32(output, mappedId);
+        Codec.writeVarInt32(output, paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            Codec.writeVarInt32(output, states[i]);
         }
 
-        int length = (int) Math.ceil(SIZE * bitsPerBlock / 64.0);
+        int length = longCount(bitsPerBlock);
         Codec.writeVarInt32(output, length);
         long[] data = new long[length];
         for (int index = 0; index < blocks.length; index++) {
@@ -177,35 +302,29 @@ public class NewChunkSection implements NBTSerializable {
      *
      * @return Amount of bytes sent by this section
      */
-    public int getExpectedSize() throws Exception {
-        int bitsPerBlock = palette.size() > 255 ? 16 : 8;
+    public int getExpectedSize() {
+        int bitsPerBlock = bitsPerBlock();
+        int length = longCount(bitsPerBlock);
+
         int bytes = 1; // bits per block
         bytes += paletteBytes(); // palette
-        bytes += countBytes(bitsPerBlock == 16 ? SIZE * 2 : SIZE); // block data length
-        bytes += (palette.size() > 255 ? 2 : 1) * SIZE; // block data
+        bytes += Codec.varIntLength(length); // block data length
+        bytes += length * 8; // block data
         bytes += LIGHT_LENGTH; // block light
         bytes += hasSkyLight() ? LIGHT_LENGTH : 0; // sky light
         return bytes;
     }
 
-    private int paletteBytes() throws Exception {
+    private int paletteBytes() {
         // Count bytes used by pallet
-        int bytes = countBytes(palette.size());
-        for (int mappedId : palette) {
-            bytes += countBytes(mappedId);
+        int bytes = Codec.varIntLength(paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            bytes += Codec.varIntLength(states[i]);
         }
         return bytes;
     }
 
-    private int countBytes(int value) throws Exception {
-        // Count amount of bytes that would be sent if the value were sent as a VarInt
-        ByteBuf buf = Unpooled.buffer();
-        Codec.writeVarInt32(buf, value);
-        buf.readerIndex(0);
-        int bitCount = buf.readableBytes();
-        buf.release();
-        return bitCount;
+    private static int longCount(int bitsPerBlock) {
+        return (SIZE * bitsPerBlock + 63) / 64;
     }
-
-
-}
\ No newline at end of file
+}
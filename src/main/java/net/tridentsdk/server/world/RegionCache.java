@@ -0,0 +1,309 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.util.TridentLogger;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the open region files, closing the least recently used ones when there are more than the configured limit
+ *
+ * <p>A region is held open for as long as it has been acquired and not released, so reads and writes in progress
+ * never find their file closed. Regions that are not in use are closed as soon as the limit is exceeded.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class RegionCache {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int MAX_OPEN = tridentCfg.getInt("max-open-regions", 256);
+
+    private static final RegionCache INSTANCE = new RegionCache();
+
+    @GuardedBy("this")
+    private final LinkedHashMap<Path, Handle> handles = new LinkedHashMap<>(16, 0.75F, true);
+    // Regions known not to exist on disk, so looking for chunks in unexplored areas doesn't touch the file system
+    private final Set<Path> missing = ConcurrentHashMap.newKeySet();
+    // Regions removed from the cache that are still being closed, they can't be opened again until they are
+    @GuardedBy("this")
+    private final Set<Path> closing = new HashSet<>();
+    // Regions that were closed to make room, an open of one of these is a reopen
+    private final Set<Path> evicted = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder opens = new LongAdder();
+    private final LongAdder reopens = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private RegionCache() {
+    }
+
+    /**
+     * Obtains the region cache for the server's worlds
+     *
+     * @return the region cache
+     */
+    public static RegionCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Obtains the region file holding the given chunk, opening it if needed, and keeps it open until it is
+     * {@link #release(RegionFile) released}
+     *
+     * <p>Regions that were found not to exist are remembered until they are created, so repeated lookups with
+     * {@code create} set to {@code false} do not check the disk.</p>
+     *
+     * @param world    the world name
+     * @param location the location of a chunk in the region
+     * @param create   {@code true} to create the region file if it does not exist
+     * @return the region file, or {@code null} if it does not exist and was not created
+     */
+    public RegionFile acquire(String world, ChunkLocation location, boolean create) {
+        return acquire(Paths.get(world + "/region/", WorldUtils.regionFile(location)), create);
+    }
+
+    /**
+     * Obtains the region file at the given path, opening it if needed, and keeps it open until it is
+     * {@link #release(RegionFile) released}
+     *
+     * <p>Files are opened without holding the cache lock, so other regions can be looked up meanwhile. A region
+     * being opened or closed by another thread is waited for, so a file is never open twice.</p>
+     *
+     * @param path   the path of the region file
+     * @param create {@code true} to create the region file if it does not exist
+     * @return the region file, or {@code null} if it does not exist and was not created
+     */
+    public RegionFile acquire(Path path, boolean create) {
+        boolean interrupted = false;
+        Handle handle;
+        try {
+            synchronized (this) {
+                while (true) {
+                    if (!create && missing.contains(path)) {
+                        return null;
+                    }
+
+                    handle = handles.get(path);
+                    if (handle != null && handle.region != null) {
+                        handle.refs++;
+                        return handle.region;
+                    }
+
+                    // Being opened by another thread, or still being closed after it was evicted
+                    if (handle != null || closing.contains(path)) {
+                        interrupted |= awaitChange();
+                        continue;
+                    }
+
+                    // Reserves the path, the reference keeps the handle from being evicted while it opens
+                    handle = new Handle();
+                    handle.refs++;
+                    handles.put(path, handle);
+                    break;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        RegionFile region;
+        try {
+            region = create || Files.exists(path) ? new RegionFile(path.toFile()) : null;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                handles.remove(path);
+                notifyAll();
+            }
+            throw e;
+        }
+
+        List<RegionFile> closing;
+        synchronized (this) {
+            if (region == null) {
+                handles.remove(path);
+                missing.add(path);
+                notifyAll();
+                return null;
+            }
+
+            handle.region = region;
+            missing.remove(path);
+            opens.increment();
+            if (evicted.remove(path)) {
+                reopens.increment();
+            }
+
+            notifyAll();
+            closing = evict();
+        }
+
+        close(closing);
+        return region;
+    }
+
+    // Waits for a region to finish opening or closing, returning whether the thread was interrupted
+    @GuardedBy("this")
+    private boolean awaitChange() {
+        try {
+            wait();
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Releases a region obtained from {@link #acquire(String, ChunkLocation, boolean)}, allowing it to be closed
+     *
+     * @param region the region to release
+     */
+    public void release(RegionFile region) {
+        List<RegionFile> closing;
+        synchronized (this) {
+            Handle handle = handles.get(region.path());
+            if (handle == null || handle.region != region) {
+                return;
+            }
+
+            handle.refs--;
+            closing = evict();
+        }
+
+        close(closing);
+    }
+
+    /**
+     * Closes every region that is not in use, such as when the server stops
+     */
+    public void closeAll() {
+        List<RegionFile> closing = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<Path, Handle>> it = handles.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Path, Handle> entry = it.next();
+                if (entry.getValue().refs == 0) {
+                    it.remove();
+                    this.closing.add(entry.getKey());
+                    closing.add(entry.getValue().region);
+                }
+            }
+        }
+
+        close(closing);
+    }
+
+    @GuardedBy("this")
+    private List<RegionFile> evict() {
+        if (handles.size() <= MAX_OPEN) {
+            return null;
+        }
+
+        List<RegionFile> closing = new ArrayList<>();
+        // Least recently used first
+        for (Iterator<Map.Entry<Path, Handle>> it = handles.entrySet().iterator();
+             it.hasNext() && handles.size() > MAX_OPEN; ) {
+            Map.Entry<Path, Handle> entry = it.next();
+            if (entry.getValue().refs == 0) {
+                it.remove();
+                evicted.add(entry.getKey());
+                this.closing.add(entry.getKey());
+                closing.add(entry.getValue().region);
+                evictions.increment();
+            }
+        }
+
+        return closing;
+    }
+
+    // Closes regions removed from the cache, then lets the threads waiting to open them again through
+    private void close(List<RegionFile> closing) {
+        if (closing == null) {
+            return;
+        }
+
+        for (RegionFile region : closing) {
+            try {
+                region.close();
+            } catch (IOException e) {
+                TridentLogger.get().error(e);
+            } finally {
+                synchronized (this) {
+                    this.closing.remove(region.path());
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * The amount of region files currently open
+     *
+     * @return the open region count
+     */
+    public synchronized int openHandles() {
+        return handles.size();
+    }
+
+    /**
+     * The amount of times a region file was opened
+     *
+     * @return the open count
+     */
+    public long opens() {
+        return opens.sum();
+    }
+
+    /**
+     * The amount of times a region file was opened again after it was closed to make room
+     *
+     * <p>A high count compared to {@link #opens()} means the limit is too low for the area players explore.</p>
+     *
+     * @return the reopen count
+     */
+    public long reopens() {
+        return reopens.sum();
+    }
+
+    /**
+     * The amount of region files closed to stay within the limit
+     *
+     * @return the eviction count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static final class Handle {
+        // Guarded by the cache, null while the file is being opened
+        private RegionFile region;
+        private int refs;
+    }
+}
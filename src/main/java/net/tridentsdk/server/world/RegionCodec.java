@@ -0,0 +1,161 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the chunks stored in region files, as recorded by the version byte of each chunk
+ *
+ * <p>Each thread keeps its own deflater, inflater and buffers, so saving or loading a chunk neither creates native
+ * compression state nor goes through a chain of streams.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+final class RegionCodec {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int LEVEL = tridentCfg.getInt("region-compression-level", 6);
+
+    static final byte VERSION_GZIP = 1;
+    static final byte VERSION_DEFLATE = 2;
+    // Stored as is, for disks fast enough that compression costs more than it saves
+    static final byte VERSION_NONE = 3;
+
+    // The version chunks are saved with
+    private static final byte VERSION = LEVEL == 0 ? VERSION_NONE : VERSION_DEFLATE;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(
+            () -> new Deflater(Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, LEVEL))));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private RegionCodec() {
+    }
+
+    /**
+     * Encodes a chunk with its header, ready to be written to its sectors
+     *
+     * <p>The returned buffer is only valid until the next chunk is encoded on the same thread.</p>
+     *
+     * @param chunk  the chunk data, after the first {@link RegionFile#CHUNK_HEADER_SIZE} bytes which are reserved
+     *               for the header
+     * @param length the length of the chunk array in use, including the reserved bytes
+     * @return the chunk header followed by the encoded data
+     */
+    static ByteBuffer encode(byte[] chunk, int length) {
+        int header = RegionFile.CHUNK_HEADER_SIZE;
+        byte[] out;
+        int size;
+
+        if (VERSION == VERSION_NONE) {
+            // The header is written over the reserved bytes
+            out = chunk;
+            size = length - header;
+        } else {
+            Buffers buffers = BUFFERS.get();
+            out = buffers.encoded;
+            size = 0;
+
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            deflater.setInput(chunk, header, length - header);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (header + size == out.length) {
+                    out = buffers.encoded = Arrays.copyOf(out, out.length * 2);
+                }
+
+                size += deflater.deflate(out, header + size, out.length - header - size);
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(out, 0, header + size);
+        buf.putInt(0, size + 1); // chunk length
+        buf.put(4, VERSION); // chunk version number
+        return buf;
+    }
+
+    /**
+     * Decodes the data of a chunk that has been read from its sectors
+     *
+     * @param version the version byte of the chunk
+     * @param raw     the array holding the data
+     * @param offset  the position of the data in the array
+     * @param length  the length of the data
+     * @return a stream of the uncompressed chunk, or {@code null} if the version is unknown
+     * @throws IOException if the data is corrupted
+     */
+    static InputStream decode(byte version, byte[] raw, int offset, int length) throws IOException {
+        switch (version) {
+            case VERSION_NONE:
+                return new ByteArrayInputStream(raw, offset, length);
+            case VERSION_DEFLATE:
+                return new ByteArrayInputStream(inflate(raw, offset, length));
+            case VERSION_GZIP:
+                return new GZIPInputStream(new ByteArrayInputStream(raw, offset, length));
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] inflate(byte[] raw, int offset, int length) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        byte[] out = buffers.inflated;
+        int size = 0;
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(raw, offset, length);
+        try {
+            while (!inflater.finished()) {
+                if (size == out.length) {
+                    out = buffers.inflated = Arrays.copyOf(out, out.length * 2);
+                }
+
+                int inflated = inflater.inflate(out, size, out.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Chunk data ends before the end of the compressed stream");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+
+        // The buffer is reused by the next chunk, the stream gets its own copy
+        return Arrays.copyOf(out, size);
+    }
+
+    private static final class Buffers {
+        private byte[] encoded = new byte[16384];
+        private byte[] inflated = new byte[65536];
+    }
+}
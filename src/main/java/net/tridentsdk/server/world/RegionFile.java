@@ -17,6 +17,8 @@
 
 package net.tridentsdk.server.world;
 
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
 import net.tridentsdk.meta.nbt.CompoundTag;
 import net.tridentsdk.meta.nbt.NBTDecoder;
 import net.tridentsdk.meta.nbt.NBTEncoder;
@@ -24,43 +26,56 @@ import net.tridentsdk.meta.nbt.NBTException;
 import net.tridentsdk.util.TridentLogger;
 import net.tridentsdk.world.ChunkLocation;
 
+import javax.annotation.concurrent.GuardedBy;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Represents a Region File (in region/ directory) in memory
  */
 public class RegionFile {
-    private static final ConcurrentMap<Path, RegionFile> FILE_CACHE = new ConcurrentHashMap<>();
-
-    private static final int VERSION_GZIP = 1;
-    private static final int VERSION_DEFLATE = 2;
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final boolean JOURNALED = tridentCfg.getBoolean("region-journal", false);
+    // The region file is synced and the journal emptied once it grows past this
+    private static final long CHECKPOINT_BYTES = 8L * 1024L * 1024L;
 
     private static final int SECTOR_BYTES = 4096;
     private static final int SECTOR_INTS = SECTOR_BYTES / 4;
 
     static final int CHUNK_HEADER_SIZE = 5;
-    private static final byte emptySector[] = new byte[4096];
+
+    // Chunk slots share read-write locks by index, reads of different chunks proceed concurrently
+    private static final int SLOT_LOCKS = 64;
 
     private final File fileName;
-    private RandomAccessFile file;
+    private final Path path;
+    // The file and its tables are only replaced by compaction, which holds every slot lock
+    private FileChannel channel;
+    // The offset and timestamp tables, updating an entry is a write to memory rather than a seek and a write
+    private MappedByteBuffer header;
+    private final ReadWriteLock[] slotLocks = new ReadWriteLock[SLOT_LOCKS];
     private final int offsets[];
     private final int chunkTimestamps[];
-    private ArrayList<Boolean> sectorFree;
+    private final Object allocationLock = new Object();
+    @GuardedBy("allocationLock")
+    private SectorAllocator allocator;
+    @GuardedBy("allocationLock")
     private int sizeDelta;
+    // The amount of sectors in the file, read without holding the allocation lock
+    private volatile int sectors;
     private long lastModified = 0;
-
-    public static RegionFile fromPath(String name, ChunkLocation location) {
-        final Path path = Paths.get(name + "/region/", WorldUtils.regionFile(location));
-        return FILE_CACHE.computeIfAbsent(path, (k) -> new RegionFile(k.toFile()));
-    }
+    // Null unless chunk writes are journaled
+    private final RegionJournal journal;
 
     public CompoundTag decode(ChunkLocation location) {
         DataInputStream dis = getChunkDataInputStream(location.x() & 31, location.z() & 31);
@@ -75,19 +90,32 @@ public class RegionFile {
         return null;
     }
 
-    public TridentChunk loadChunkData(TridentWorld world, ChunkLocation location) {
-        CompoundTag chunkRoot = decode(location);
-        if (chunkRoot == null) return null;
+    /**
+     * Reads the chunk into the given chunk, decoding its sections without building the tag tree
+     *
+     * @param chunk the chunk to load
+     * @return {@code true} if the chunk was found and loaded
+     */
+    public boolean loadChunkData(TridentChunk chunk) {
+        ChunkLocation location = chunk.location();
+        DataInputStream dis = getChunkDataInputStream(location.x() & 31, location.z() & 31);
+        if (dis == null) return false;
 
-        TridentChunk chunk = new TridentChunk(world, location);
-        chunk.load(chunkRoot);
+        try {
+            chunk.load(AnvilChunkDecoder.decode(dis));
+            return true;
+        } catch (IOException e) {
+            TridentLogger.get().error(e);
+        }
 
-        return chunk;
+        return false;
     }
 
     public void saveChunkData(TridentChunk chunk) {
-        ChunkLocation loc = chunk.location();
-        CompoundTag chunkRoot = chunk.asNbt();
+        saveChunkData(chunk.location(), chunk.asNbt());
+    }
+
+    public void saveChunkData(ChunkLocation loc, CompoundTag chunkRoot) {
         DataOutputStream dos = getChunkDataOutputStream(loc.x() & 31, loc.z() & 31);
         NBTEncoder encoder = new NBTEncoder(dos);
         try {
@@ -103,15 +131,48 @@ public class RegionFile {
         }
     }
 
+    /**
+     * Writes the chunk tag to the region, failing instead of logging if it couldn't be
+     *
+     * @param loc       the chunk location
+     * @param chunkRoot the chunk tag
+     * @throws IOException if the chunk could not be encoded or written
+     */
+    public void writeChunkData(ChunkLocation loc, CompoundTag chunkRoot) throws IOException {
+        int x = loc.x() & 31;
+        int z = loc.z() & 31;
+        ChunkBuffer buffer = new ChunkBuffer(x, z);
+        try {
+            new NBTEncoder(new DataOutputStream(buffer)).encode(chunkRoot);
+        } catch (NBTException e) {
+            throw new IOException(e);
+        }
+
+        store(x, z, buffer.encode(), journal);
+    }
+
     ////////////////////////////// ACTUAL FILE /////////////////////////////
 
     public RegionFile(File path) {
+        this(path, JOURNALED);
+    }
+
+    /**
+     * Opens a region file, writing again the chunks left in its journal if it was not closed properly
+     *
+     * @param path      the region file
+     * @param journaled {@code true} to append chunks to a journal, synced by {@link #commit()}, before the header
+     *                  points to them
+     */
+    public RegionFile(File path, boolean journaled) {
         offsets = new int[SECTOR_INTS];
         chunkTimestamps = new int[SECTOR_INTS];
+        for (int i = 0; i < SLOT_LOCKS; i++) {
+            slotLocks[i] = new ReentrantReadWriteLock();
+        }
 
         fileName = path;
-        // // debugln("REGION LOAD " + fileName);
-
+        this.path = path.toPath();
         sizeDelta = 0;
 
         try {
@@ -119,143 +180,148 @@ public class RegionFile {
                 lastModified = path.lastModified();
             }
 
-            file = new RandomAccessFile(path, "rw");
+            open();
 
-            if (file.length() < SECTOR_BYTES) {
-                /* we need to write the chunk offset table */
-                for (int i = 0; i < SECTOR_INTS; ++i) {
-                    file.writeInt(0);
-                }
-                // write another sector for the timestamp info
-                for (int i = 0; i < SECTOR_INTS; ++i) {
-                    file.writeInt(0);
+            Path journalPath = journalPath();
+            if (Files.exists(journalPath)) {
+                int replayed = RegionJournal.replay(journalPath,
+                        (slot, chunk) -> write(slot & 31, slot >> 5, chunk, null));
+                if (replayed > 0) {
+                    channel.force(false);
+                    header.force();
+                    TridentLogger.get().warn("Recovered " + replayed + " chunks from the journal of " + path);
                 }
-
-                sizeDelta += SECTOR_BYTES * 2;
             }
 
-            if ((file.length() & 0xfff) != 0) {
-                /* the file size is not a multiple of 4KB, grow it */
-                for (int i = 0; i < (file.length() & 0xfff); ++i) {
-                    file.write((byte) 0);
-                }
-            }
-
-            /* set up the available sector map */
-            int nSectors = (int) file.length() / SECTOR_BYTES;
-            sectorFree = new ArrayList<Boolean>(nSectors);
-
-            for (int i = 0; i < nSectors; ++i) {
-                sectorFree.add(true);
-            }
-
-            sectorFree.set(0, false); // chunk offset table
-            sectorFree.set(1, false); // for the last modified info
-
-            file.seek(0);
-            for (int i = 0; i < SECTOR_INTS; ++i) {
-                int offset = file.readInt();
-                offsets[i] = offset;
-                if (offset != 0 && (offset >> 8) + (offset & 0xFF) <= sectorFree.size()) {
-                    for (int sectorNum = 0; sectorNum < (offset & 0xFF); ++sectorNum) {
-                        sectorFree.set((offset >> 8) + sectorNum, false);
-                    }
-                }
-            }
-            for (int i = 0; i < SECTOR_INTS; ++i) {
-                int lastModValue = file.readInt();
-                chunkTimestamps[i] = lastModValue;
+            if (journaled) {
+                journal = new RegionJournal(journalPath);
+            } else {
+                journal = null;
+                Files.deleteIfExists(journalPath);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalStateException("Could not open region file " + path, e);
         }
     }
 
-    /* the modification date of the region file when it was first opened */
-    public long lastModified() {
-        return lastModified;
+    private Path journalPath() {
+        return path.resolveSibling(path.getFileName() + ".journal");
     }
 
-    /* gets how much the region file has grown since it was last checked */
-    public synchronized int getSizeDelta() {
-        int ret = sizeDelta;
-        sizeDelta = 0;
-        return ret;
-    }
+    /* opens the file and reads its tables, the caller must hold every slot lock unless constructing */
+    private void open() throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        int grown = 0;
+
+        long size = channel.size();
+        if (size < SECTOR_BYTES * 2) {
+            /* we need to write the chunk offset table and the timestamp table */
+            writeFully(channel, ByteBuffer.allocate(SECTOR_BYTES * 2 - (int) size), size);
+            grown += SECTOR_BYTES * 2;
+        } else if ((size & 0xfff) != 0) {
+            /* the file size is not a multiple of 4KB, grow it */
+            writeFully(channel, ByteBuffer.allocate(SECTOR_BYTES - (int) (size & 0xfff)), size);
+        }
 
-    // various small // debug printing helpers
-    private void debug(String in) {
-        TridentLogger.get().warn(in);
-    }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, SECTOR_BYTES * 2);
 
-    private void debugln(String in) {
-        // debug(in);
+        /* set up the available sector map */
+        int nSectors = (int) (channel.size() / SECTOR_BYTES);
+        SectorAllocator allocator = new SectorAllocator(nSectors);
+        allocator.markUsed(0, 2); // chunk offset table and the last modified info
+
+        for (int i = 0; i < SECTOR_INTS; ++i) {
+            int offset = header.getInt(i * 4);
+            offsets[i] = offset;
+            if (offset != 0 && (offset >> 8) + (offset & 0xFF) <= nSectors) {
+                allocator.markUsed(offset >> 8, offset & 0xFF);
+            }
+        }
+        for (int i = 0; i < SECTOR_INTS; ++i) {
+            chunkTimestamps[i] = header.getInt(SECTOR_BYTES + i * 4);
+        }
+
+        this.channel = channel;
+        this.header = header;
+        synchronized (allocationLock) {
+            this.allocator = allocator;
+            sizeDelta += grown;
+        }
+        sectors = nSectors;
     }
 
-    private void debug(String mode, int x, int z, String in) {
-        // debug("REGION " + mode + " " + fileName.getName() + "[" + x + "," + z + "] = " + in);
+    /* the path of the region file, which identifies it in the region cache */
+    Path path() {
+        return path;
     }
 
-    private void debug(String mode, int x, int z, int count, String in) {
-        // debug("REGION " + mode + " " + fileName.getName() + "[" + x + "," + z + "] " + count + "B = " + in);
+    /* the modification date of the region file when it was first opened */
+    public long lastModified() {
+        return lastModified;
     }
 
-    private void debugln(String mode, int x, int z, String in) {
-        // debug(mode, x, z, in);
+    /* gets how much the region file has grown since it was last checked */
+    public int getSizeDelta() {
+        synchronized (allocationLock) {
+            int ret = sizeDelta;
+            sizeDelta = 0;
+            return ret;
+        }
     }
 
     /*
      * gets an (uncompressed) stream representing the chunk data returns null if
      * the chunk is not found or an error occurs
+     *
+     * chunks in different slots are read concurrently, a read only waits for a
+     * write to the same chunk
      */
-    public synchronized DataInputStream getChunkDataInputStream(int x, int z) {
+    public DataInputStream getChunkDataInputStream(int x, int z) {
         if (outOfBounds(x, z)) {
-            // // debugln("READ", x, z, "out of bounds");
             return null;
         }
 
+        byte[] raw;
+        int length;
+
+        Lock lock = slotLock(x, z).readLock();
+        lock.lock();
         try {
             int offset = getOffset(x, z);
             if (offset == 0) {
-                // // debugln("READ", x, z, "miss");
                 return null;
             }
 
             int sectorNumber = offset >> 8;
             int numSectors = offset & 0xFF;
 
-            if (sectorNumber + numSectors > sectorFree.size()) {
-                // debugln("READ", x, z, "invalid sector");
+            if (sectorNumber + numSectors > sectors) {
                 return null;
             }
 
-            file.seek(sectorNumber * SECTOR_BYTES);
-            int length = file.readInt();
-
-            if (length > SECTOR_BYTES * numSectors) {
-                // debugln("READ", x, z, "invalid length: " + length + " > 4096 * " + numSectors);
+            // The whole run is read at once, the length and version are taken out of it
+            raw = new byte[numSectors * SECTOR_BYTES];
+            int read = readFully(ByteBuffer.wrap(raw), (long) sectorNumber * SECTOR_BYTES);
+            if (read < CHUNK_HEADER_SIZE) {
                 return null;
             }
 
-            byte version = file.readByte();
-            if (version == VERSION_GZIP) {
-                byte[] data = new byte[length - 1];
-                file.read(data);
-                DataInputStream ret = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
-                // debug("READ", x, z, " = found");
-                return ret;
-            } else if (version == VERSION_DEFLATE) {
-                byte[] data = new byte[length - 1];
-                file.read(data);
-                DataInputStream ret = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
-                // debug("READ", x, z, " = found");
-                return ret;
+            length = ByteBuffer.wrap(raw).getInt();
+            if (length > SECTOR_BYTES * numSectors || length < 1 || length + 4 > read) {
+                return null;
             }
-
-            // debugln("READ", x, z, "unknown version " + version);
+        } catch (IOException e) {
             return null;
+        } finally {
+            lock.unlock();
+        }
+
+        // Decompressed without holding the lock
+        try {
+            InputStream data = RegionCodec.decode(raw[4], raw, CHUNK_HEADER_SIZE, length - 1);
+            return data == null ? null : new DataInputStream(data);
         } catch (IOException e) {
-            // debugln("READ", x, z, "exception");
             return null;
         }
     }
@@ -263,7 +329,7 @@ public class RegionFile {
     public DataOutputStream getChunkDataOutputStream(int x, int z) {
         if (outOfBounds(x, z)) return null;
 
-        return new DataOutputStream(new DeflaterOutputStream(new ChunkBuffer(x, z)));
+        return new DataOutputStream(new ChunkBuffer(x, z));
     }
 
     /*
@@ -277,96 +343,354 @@ public class RegionFile {
             super(8096); // initialize to 8KB
             this.x = x;
             this.z = z;
+
+            // Room for the chunk header, so that it can be written as is when stored uncompressed
+            count = CHUNK_HEADER_SIZE;
         }
 
         public void close() {
-            RegionFile.this.write(x, z, buf, count);
+            RegionFile.this.write(x, z, encode());
+        }
+
+        ByteBuffer encode() {
+            return RegionCodec.encode(buf, count);
+        }
+    }
+
+    /* write a chunk at (x,z) to disk, the buffer holds the chunk header followed by its data */
+    protected void write(int x, int z, ByteBuffer chunk) {
+        write(x, z, chunk, journal);
+    }
+
+    private void write(int x, int z, ByteBuffer chunk, RegionJournal journal) {
+        try {
+            store(x, z, chunk, journal);
+        } catch (IOException e) {
+            TridentLogger.get().error(e);
         }
     }
 
-    /* write a chunk at (x,z) with length bytes of data to disk */
-    protected synchronized void write(int x, int z, byte[] data, int length) {
+    private void store(int x, int z, ByteBuffer chunk, RegionJournal journal) throws IOException {
+        int sectorsNeeded = chunk.remaining() / SECTOR_BYTES + 1;
+
+        // maximum chunk size is 1MB
+        if (sectorsNeeded >= 256) {
+            return;
+        }
+
+        Lock lock = slotLock(x, z).writeLock();
+        lock.lock();
         try {
             int offset = getOffset(x, z);
             int sectorNumber = offset >> 8;
             int sectorsAllocated = offset & 0xFF;
-            int sectorsNeeded = (length + CHUNK_HEADER_SIZE) / SECTOR_BYTES + 1;
+            int timestamp = (int) (System.currentTimeMillis() / 1000L);
+
+            if (journal != null) {
+                /*
+                 * the chunk always moves to new sectors, reads see it right away but the
+                 * header on disk only points to it once the journal is synced, and the
+                 * old sectors are kept until then
+                 */
+                int newSector = allocate(sectorsNeeded);
+                int newOffset = (newSector << 8) | sectorsNeeded;
+                try {
+                    // Written to the region first, so the journal only gets chunks that made it there
+                    writeFully(chunk.duplicate(), (long) newSector * SECTOR_BYTES);
+                    journal.append(x + z * 32, chunk, newOffset, timestamp, offset);
+                } catch (IOException e) {
+                    // Nothing points to the new sectors, they would be lost until the region is compacted
+                    free(newSector, sectorsNeeded);
+                    throw e;
+                }
 
-            // maximum chunk size is 1MB
-            if (sectorsNeeded >= 256) {
+                offsets[x + z * 32] = newOffset;
+                chunkTimestamps[x + z * 32] = timestamp;
                 return;
             }
 
             if (sectorNumber != 0 && sectorsAllocated == sectorsNeeded) {
                 /* we can simply overwrite the old sectors */
-                // debug("SAVE", x, z, length, "rewrite");
-                write(sectorNumber, data, length);
+                writeFully(chunk, (long) sectorNumber * SECTOR_BYTES);
             } else {
-                /* we need to allocate new sectors */
+                /*
+                 * the new sectors are written before the header points to them,
+                 * and the old ones are only freed after
+                 */
+                int newSector = allocate(sectorsNeeded);
+                writeFully(chunk, (long) newSector * SECTOR_BYTES);
+                setOffset(x, z, (newSector << 8) | sectorsNeeded);
+
+                if (sectorNumber != 0) {
+                    free(sectorNumber, sectorsAllocated);
+                }
+            }
+            setTimestamp(x, z, timestamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the chunks written since the last commit durable, with a single sync of the journal, then points the
+     * header to them
+     *
+     * <p>Does nothing unless the region is journaled.</p>
+     */
+    public void commit() {
+        RegionJournal journal = this.journal;
+        if (journal == null) {
+            return;
+        }
 
-                /* mark the sectors previously used for this chunk as free */
-                for (int i = 0; i < sectorsAllocated; ++i) {
-                    sectorFree.set(sectorNumber + i, true);
+        synchronized (journal) {
+            try {
+                int[] committed = journal.commit();
+                if (committed == null) {
+                    return;
                 }
 
-                /* scan for a free space large enough to store this chunk */
-                int runStart = sectorFree.indexOf(true);
-                int runLength = 0;
-                if (runStart != -1) {
-                    for (int i = runStart; i < sectorFree.size(); ++i) {
-                        if (runLength != 0) {
-                            if (sectorFree.get(i)) runLength++;
-                            else runLength = 0;
-                        } else if (sectorFree.get(i)) {
-                            runStart = i;
-                            runLength = 1;
-                        }
-                        if (runLength >= sectorsNeeded) {
-                            break;
-                        }
+                for (int i = 0; i < committed.length; i += 4) {
+                    int slot = committed[i];
+                    header.putInt(slot * 4, committed[i + 1]);
+                    header.putInt(SECTOR_BYTES + slot * 4, committed[i + 2]);
+
+                    int previous = committed[i + 3];
+                    if (previous != 0) {
+                        free(previous >> 8, previous & 0xFF);
                     }
                 }
 
-                if (runLength >= sectorsNeeded) {
-                    /* we found a free space large enough */
-                    // debug("SAVE", x, z, length, "reuse");
-                    sectorNumber = runStart;
-                    setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
-                    for (int i = 0; i < sectorsNeeded; ++i) {
-                        sectorFree.set(sectorNumber + i, false);
+                if (journal.size() >= CHECKPOINT_BYTES) {
+                    checkpoint(journal);
+                }
+            } catch (IOException e) {
+                TridentLogger.get().error(e);
+            }
+        }
+    }
+
+    /* syncs the region so that the journal is no longer needed, then empties it */
+    private void checkpoint(RegionJournal journal) throws IOException {
+        channel.force(false);
+        header.force();
+        journal.truncate();
+    }
+
+    /**
+     * Syncs the chunks and the header of this region to the disk
+     *
+     * @throws IOException if the file could not be synced
+     */
+    public void sync() throws IOException {
+        commit();
+        channel.force(false);
+        header.force();
+    }
+
+    /* finds and takes a run of free sectors, growing the file if there is none */
+    private int allocate(int sectorsNeeded) throws IOException {
+        synchronized (allocationLock) {
+            int before = allocator.size();
+            int sectorNumber = allocator.allocate(sectorsNeeded);
+            int after = allocator.size();
+
+            if (after > before) {
+                /* extend the file to cover the new sectors with a single write of its last byte */
+                writeFully(ByteBuffer.allocate(1), (long) after * SECTOR_BYTES - 1);
+                sizeDelta += SECTOR_BYTES * (after - before);
+                sectors = after;
+            }
+
+            return sectorNumber;
+        }
+    }
+
+    private void free(int sectorNumber, int count) {
+        synchronized (allocationLock) {
+            allocator.free(sectorNumber, count);
+        }
+    }
+
+    private int readFully(ByteBuffer buf, long position) throws IOException {
+        return readFully(channel, buf, position);
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        writeFully(channel, buf, position);
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position() - start) < 0) {
+                break;
+            }
+        }
+
+        return buf.position() - start;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position() - start);
+        }
+    }
+
+    ////////////////////////////// COMPACTION /////////////////////////////
+
+    /**
+     * The size of the file, in sectors
+     *
+     * @return the sector count
+     */
+    public int fileSectors() {
+        return sectors;
+    }
+
+    /**
+     * The amount of sectors holding chunks or the header
+     *
+     * @return the used sector count
+     */
+    public int usedSectors() {
+        synchronized (allocationLock) {
+            return allocator.usedSectors();
+        }
+    }
+
+    /**
+     * Measures how much of the file is wasted and how scattered the chunks are
+     *
+     * <p>This reads the tables without locking, so it may be slightly off while chunks are written.</p>
+     *
+     * @return the fragmentation of this region file
+     */
+    public RegionFragmentation fragmentation() {
+        int[] runs = new int[SECTOR_INTS];
+        int chunks = 0;
+        for (int offset : offsets) {
+            if (offset != 0) {
+                runs[chunks++] = offset;
+            }
+        }
+        Arrays.sort(runs, 0, chunks);
+
+        // Chunks that don't start where the previous one in the file ends
+        int scattered = 0;
+        int expected = 2;
+        for (int i = 0; i < chunks; i++) {
+            if (runs[i] >> 8 != expected) {
+                scattered++;
+            }
+            expected = (runs[i] >> 8) + (runs[i] & 0xFF);
+        }
+
+        return new RegionFragmentation(fileName.getName(), chunks, fileSectors(), usedSectors(), scattered);
+    }
+
+    /**
+     * Rewrites the chunks of this region contiguously, in the order they appear in the file, and swaps the
+     * rewritten file in place of this one
+     *
+     * <p>The region can't be read or written while it is compacted. Sector runs larger than their chunk needs are
+     * shrunk, and the file is truncated to the chunks it holds.</p>
+     *
+     * @return {@code true} if the file was replaced, {@code false} if it could not be moved in place of this one
+     * @throws IOException if the chunks could not be copied
+     */
+    public boolean compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+
+        for (ReadWriteLock lock : slotLocks) {
+            lock.writeLock().lock();
+        }
+        try {
+            // Pending header updates refer to the current layout
+            commit();
+
+            Integer[] order = new Integer[SECTOR_INTS];
+            int chunks = 0;
+            for (int i = 0; i < SECTOR_INTS; i++) {
+                if (offsets[i] != 0) {
+                    order[chunks++] = i;
+                }
+            }
+            Arrays.sort(order, 0, chunks, (a, b) -> Integer.compare(offsets[a] >> 8, offsets[b] >> 8));
+
+            // Laid out from the start, nothing is ever freed so every chunk follows the one before it
+            SectorAllocator layout = new SectorAllocator(2);
+            layout.markUsed(0, 2);
+            ByteBuffer tables = ByteBuffer.allocate(SECTOR_BYTES * 2);
+
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < chunks; i++) {
+                    int slot = order[i];
+                    int sectorNumber = offsets[slot] >> 8;
+                    int numSectors = offsets[slot] & 0xFF;
+                    if (sectorNumber + numSectors > sectors) {
+                        continue;
                     }
-                    write(sectorNumber, data, length);
-                } else {
-                    /*
-                     * no free space large enough found -- we need to grow the
-                     * file
-                     */
-                    // debug("SAVE", x, z, length, "grow");
-                    file.seek(file.length());
-                    sectorNumber = sectorFree.size();
-                    for (int i = 0; i < sectorsNeeded; ++i) {
-                        file.write(emptySector);
-                        sectorFree.add(false);
+
+                    ByteBuffer run = ByteBuffer.allocate(numSectors * SECTOR_BYTES);
+                    int read = readFully(run, (long) sectorNumber * SECTOR_BYTES);
+
+                    // Chunks that look damaged are copied whole rather than trimmed
+                    int length = read >= 4 ? run.getInt(0) : -1;
+                    int needed = numSectors;
+                    int copied = read;
+                    if (length >= 1 && length + 4 <= read) {
+                        needed = (length + CHUNK_HEADER_SIZE - 1) / SECTOR_BYTES + 1;
+                        copied = length + 4;
                     }
-                    sizeDelta += SECTOR_BYTES * sectorsNeeded;
 
-                    write(sectorNumber, data, length);
-                    setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
+                    int newSector = layout.allocate(needed);
+                    run.position(0).limit(copied);
+                    writeFully(out, run, (long) newSector * SECTOR_BYTES);
+
+                    tables.putInt(slot * 4, (newSector << 8) | needed);
+                    tables.putInt(SECTOR_BYTES + slot * 4, chunkTimestamps[slot]);
                 }
+
+                /* make the file a whole number of sectors */
+                writeFully(out, ByteBuffer.allocate(1), (long) layout.size() * SECTOR_BYTES - 1);
+                writeFully(out, tables, 0);
+                out.force(true);
+            }
+
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Some platforms don't allow replacing a file that is open, keep using the current one
+                Files.deleteIfExists(temp);
+                return false;
+            }
+
+            int before = sectors;
+            FileChannel old = channel;
+            open();
+            old.close();
+
+            synchronized (allocationLock) {
+                sizeDelta += (sectors - before) * SECTOR_BYTES;
+            }
+
+            // The compacted file was synced with every chunk in it
+            if (journal != null) {
+                journal.truncate();
+            }
+            return true;
+        } finally {
+            for (int i = slotLocks.length - 1; i >= 0; i--) {
+                slotLocks[i].writeLock().unlock();
             }
-            setTimestamp(x, z, (int) (System.currentTimeMillis() / 1000L));
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
-    /* write a chunk data to the region file at specified sector number */
-    private void write(int sectorNumber, byte[] data, int length) throws IOException {
-        // debugln(" " + sectorNumber);
-        file.seek(sectorNumber * SECTOR_BYTES);
-        file.writeInt(length + 1); // chunk length
-        file.writeByte(VERSION_DEFLATE); // chunk version number
-        file.write(data, 0, length); // chunk data
+    private ReadWriteLock slotLock(int x, int z) {
+        return slotLocks[(x + z * 32) & (SLOT_LOCKS - 1)];
     }
 
     /* is this an invalid chunk coordinate? */
@@ -378,23 +702,47 @@ public class RegionFile {
         return offsets[x + z * 32];
     }
 
+    /**
+     * Whether or not the region holds the chunk at the given position, answered from the offset table in memory
+     *
+     * @param x the chunk x inside of the region, from 0 to 31
+     * @param z the chunk z inside of the region, from 0 to 31
+     * @return {@code true} if the chunk has been written to this region
+     */
     public boolean hasChunk(int x, int z) {
-        return getOffset(x, z) != 0;
+        return !outOfBounds(x, z) && getOffset(x, z) != 0;
+    }
+
+    /**
+     * Whether or not the region holds the given chunk
+     *
+     * @param location the chunk location
+     * @return {@code true} if the chunk has been written to this region
+     */
+    public boolean hasChunk(ChunkLocation location) {
+        return hasChunk(location.x() & 31, location.z() & 31);
     }
 
-    private void setOffset(int x, int z, int offset) throws IOException {
+    private void setOffset(int x, int z, int offset) {
         offsets[x + z * 32] = offset;
-        file.seek((x + z * 32) * 4);
-        file.writeInt(offset);
+        header.putInt((x + z * 32) * 4, offset);
     }
 
-    private void setTimestamp(int x, int z, int value) throws IOException {
+    private void setTimestamp(int x, int z, int value) {
         chunkTimestamps[x + z * 32] = value;
-        file.seek(SECTOR_BYTES + (x + z * 32) * 4);
-        file.writeInt(value);
+        header.putInt(SECTOR_BYTES + (x + z * 32) * 4, value);
     }
 
     public void close() throws IOException {
-        file.close();
+        if (journal != null) {
+            commit();
+            synchronized (journal) {
+                checkpoint(journal);
+            }
+            journal.close(journalPath());
+        }
+
+        header.force();
+        channel.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * How much space a region file wastes and how scattered its chunks are, at the time it was measured
+ *
+ * @author The TridentSDK Team
+ */
+@Immutable
+public final class RegionFragmentation {
+    private static final int SECTOR_BYTES = 4096;
+
+    private final String name;
+    private final int chunks;
+    private final int fileSectors;
+    private final int usedSectors;
+    private final int scattered;
+
+    RegionFragmentation(String name, int chunks, int fileSectors, int usedSectors, int scattered) {
+        this.name = name;
+        this.chunks = chunks;
+        this.fileSectors = fileSectors;
+        this.usedSectors = usedSectors;
+        this.scattered = scattered;
+    }
+
+    /**
+     * The file name of the region
+     *
+     * @return the region file name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The amount of chunks saved in the region
+     *
+     * @return the chunk count
+     */
+    public int chunks() {
+        return chunks;
+    }
+
+    /**
+     * The size of the region file
+     *
+     * @return the size, in bytes
+     */
+    public long fileBytes() {
+        return (long) fileSectors * SECTOR_BYTES;
+    }
+
+    /**
+     * The space in the file left behind by chunks that moved
+     *
+     * @return the free space, in bytes
+     */
+    public long freeBytes() {
+        return (long) (fileSectors - usedSectors) * SECTOR_BYTES;
+    }
+
+    /**
+     * The share of the file that is free space
+     *
+     * @return the free space, from 0 to 100
+     */
+    public int freePercent() {
+        return fileSectors == 0 ? 0 : (fileSectors - usedSectors) * 100 / fileSectors;
+    }
+
+    /**
+     * The amount of chunks that do not directly follow the chunk before them in the file
+     *
+     * @return the scattered chunk count
+     */
+    public int scattered() {
+        return scattered;
+    }
+}
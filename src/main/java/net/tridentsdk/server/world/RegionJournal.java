@@ -0,0 +1,226 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The write-ahead journal of a region file
+ *
+ * <p>Every chunk written to the region is first appended here, and the region header is only pointed at the new
+ * sectors after the journal has been synced. The sync is shared by every chunk written since the last one, so a
+ * batch of chunks costs one sync instead of one each. If the server stops before the region file itself has been
+ * synced, the chunks in the journal are written again when the region is next opened.</p>
+ *
+ * <p>Records are the chunk slot, the length of the chunk, a CRC32 of it and the chunk as it is stored in the
+ * region. A record that was cut off or doesn't match its checksum ends the journal.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+final class RegionJournal {
+    private static final int RECORD_HEADER = 12;
+    private static final int MAX_CHUNK = 256 * 4096;
+
+    private final FileChannel channel;
+    @GuardedBy("this")
+    private long size;
+
+    // Header updates waiting for the next sync: slot, offset, timestamp and previous offset
+    @GuardedBy("this")
+    private int[] pending = new int[64];
+    @GuardedBy("this")
+    private int pendingCount;
+
+    RegionJournal(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Reads back the chunks of a journal left by a region that was not closed properly
+     *
+     * @param path     the journal file
+     * @param replayer receives every complete record, in the order they were written
+     * @return the amount of chunks replayed
+     * @throws IOException if the journal could not be read
+     */
+    static int replay(Path path, Replayer replayer) throws IOException {
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            CRC32 crc = new CRC32();
+
+            while (position + RECORD_HEADER <= size) {
+                header.clear();
+                if (read(channel, header, position) < RECORD_HEADER) {
+                    break;
+                }
+
+                int slot = header.getInt(0);
+                int length = header.getInt(4);
+                int checksum = header.getInt(8);
+                if (slot < 0 || slot >= 1024 || length < RegionFile.CHUNK_HEADER_SIZE || length > MAX_CHUNK
+                        || position + RECORD_HEADER + length > size) {
+                    break;
+                }
+
+                ByteBuffer chunk = ByteBuffer.allocate(length);
+                if (read(channel, chunk, position + RECORD_HEADER) < length) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(chunk.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                chunk.flip();
+                replayer.replay(slot, chunk);
+                replayed++;
+                position += RECORD_HEADER + length;
+            }
+        }
+
+        return replayed;
+    }
+
+    private static int read(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position() - start) < 0) {
+                break;
+            }
+        }
+
+        return buf.position() - start;
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position() - start);
+        }
+    }
+
+    /**
+     * Appends a chunk to the journal, its header update is returned by the next {@link #commit()}
+     *
+     * @param slot      the chunk slot in the region
+     * @param chunk     the chunk as it is stored in the region
+     * @param offset    the new offset of the chunk
+     * @param timestamp the new timestamp of the chunk
+     * @param previous  the offset the chunk had before, which must not be reused until the update is committed
+     * @throws IOException if the journal could not be written
+     */
+    synchronized void append(int slot, ByteBuffer chunk, int offset, int timestamp, int previous)
+            throws IOException {
+        int length = chunk.remaining();
+        CRC32 crc = new CRC32();
+        if (chunk.hasArray()) {
+            crc.update(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+        } else {
+            byte[] copy = new byte[length];
+            chunk.duplicate().get(copy);
+            crc.update(copy);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        header.putInt(slot).putInt(length).putInt((int) crc.getValue()).flip();
+        write(header, size);
+        write(chunk, size + RECORD_HEADER);
+        size += RECORD_HEADER + length;
+
+        if (pendingCount + 4 > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingCount++] = slot;
+        pending[pendingCount++] = offset;
+        pending[pendingCount++] = timestamp;
+        pending[pendingCount++] = previous;
+    }
+
+    /**
+     * Syncs the journal, making every chunk appended since the last commit durable
+     *
+     * @return the header updates that may now be applied, four values per chunk: the slot, the offset, the
+     *         timestamp and the previous offset, or {@code null} if nothing was appended
+     * @throws IOException if the journal could not be synced
+     */
+    synchronized int[] commit() throws IOException {
+        if (pendingCount == 0) {
+            return null;
+        }
+
+        channel.force(false);
+
+        int[] committed = Arrays.copyOf(pending, pendingCount);
+        pendingCount = 0;
+        return committed;
+    }
+
+    /**
+     * The amount of bytes in the journal since it was last truncated
+     *
+     * @return the journal size
+     */
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Empties the journal, which may only be done once the region file has been synced
+     *
+     * @return {@code true} if the journal was emptied, {@code false} if chunks were appended that are not
+     *         committed yet
+     * @throws IOException if the journal could not be truncated
+     */
+    synchronized boolean truncate() throws IOException {
+        if (pendingCount != 0) {
+            return false;
+        }
+
+        channel.truncate(0);
+        size = 0;
+        return true;
+    }
+
+    void close(Path path) throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Receives the chunks read back from a journal
+     */
+    interface Replayer {
+        void replay(int slot, ByteBuffer chunk) throws IOException;
+    }
+}
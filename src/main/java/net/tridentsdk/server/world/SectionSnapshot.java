@@ -0,0 +1,145 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.meta.nbt.CompoundTag;
+import net.tridentsdk.meta.nbt.NBTSerializer;
+import net.tridentsdk.util.NibbleArray;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An immutable view of a chunk section at a point in time
+ *
+ * <p>The block arrays are shared with the live section, which copies them before it next writes to them. The light
+ * arrays are copied when the snapshot is taken, since the light engine writes them without the section lock. The
+ * snapshot can be read or serialized on another thread without holding the section lock.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@Immutable
+public final class SectionSnapshot {
+    private final byte y;
+    private final char[] types;
+    private final byte[] blockLight;
+    private final byte[] skyLight;
+    private final int nonAir;
+    private final int version;
+
+    SectionSnapshot(byte y, char[] types, byte[] blockLight, byte[] skyLight, int nonAir, int version) {
+        this.y = y;
+        this.types = types;
+        this.blockLight = blockLight;
+        this.skyLight = skyLight;
+        this.nonAir = nonAir;
+        this.version = version;
+    }
+
+    /**
+     * Gets the position of the section in the chunk
+     *
+     * @return the section y
+     */
+    public byte y() {
+        return y;
+    }
+
+    /**
+     * The version of the section that this snapshot was taken of
+     *
+     * @return the section version
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Whether or not the section only contained air
+     *
+     * @return {@code true} if the section has no blocks in it
+     */
+    public boolean isEmpty() {
+        return nonAir == 0;
+    }
+
+    /**
+     * Whether or not the section stored any light
+     *
+     * @return {@code true} if the section has light to be saved even if it is empty
+     */
+    public boolean hasLight() {
+        return blockLight != null || skyLight != null;
+    }
+
+    /**
+     * Obtains the packed type at the given index
+     *
+     * @param index the block array index
+     * @return the block id shifted left by 4 with the data in the lower nibble
+     */
+    public char typeAt(int index) {
+        return types == null ? 0 : types[index];
+    }
+
+    /**
+     * Obtains the block light at the given index
+     *
+     * @param index the block array index
+     * @return the block light level
+     */
+    public byte blockLightAt(int index) {
+        return blockLight == null ? 0 : NibbleArray.get(blockLight, index);
+    }
+
+    /**
+     * Obtains the sky light at the given index
+     *
+     * @param index the block array index
+     * @return the sky light level
+     */
+    public byte skyLightAt(int index) {
+        return skyLight == null ? 15 : NibbleArray.get(skyLight, index);
+    }
+
+    /**
+     * Writes the contents of this snapshot back into the given section
+     *
+     * <p>Must be called while holding the section lock.</p>
+     *
+     * @param section the section to restore
+     */
+    public void restore(ChunkSection section) {
+        section.restore(types, blockLight, skyLight, nonAir);
+    }
+
+    /**
+     * Serializes the section
+     *
+     * @return the section tag
+     */
+    public CompoundTag asNbt() {
+        // The raw arrays are built into a throwaway section, the shared ones are only read
+        ChunkSection section = new ChunkSection(y);
+        section.types = types == null ? new char[ChunkSection.LENGTH] : types;
+        section.blockLight = blockLight;
+        section.skyLight = skyLight;
+        section.updateRaw();
+
+        return NBTSerializer.serialize(section);
+    }
+}
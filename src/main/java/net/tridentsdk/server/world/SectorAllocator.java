@@ -0,0 +1,182 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Keeps track of which 4KB sectors of a region file are in use, one bit per sector
+ *
+ * <p>Free runs are found by skipping whole words of used or free sectors at a time, starting from the lowest
+ * sector that may be free. A run which is too short but ends the file is grown instead of leaving it behind.</p>
+ *
+ * <p>Callers must hold their own lock while using the allocator.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@NotThreadSafe
+final class SectorAllocator {
+    // Set bits are used sectors, bits past the size are always clear
+    private long[] words;
+    private int size;
+    // No sector below this one is free
+    private int firstFree;
+
+    /**
+     * Creates an allocator for a file with the given amount of sectors, all of them free
+     *
+     * @param size the amount of sectors in the file
+     */
+    SectorAllocator(int size) {
+        this.words = new long[Math.max(1, (size + 63) >>> 6)];
+        this.size = size;
+    }
+
+    /**
+     * The amount of sectors covered, which is the size of the file in sectors
+     *
+     * @return the sector count
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isUsed(int sector) {
+        return sector < size && (words[sector >>> 6] & (1L << sector)) != 0;
+    }
+
+    /**
+     * The amount of sectors in use
+     *
+     * @return the used sector count
+     */
+    int usedSectors() {
+        int used = 0;
+        for (long word : words) {
+            used += Long.bitCount(word);
+        }
+
+        return used;
+    }
+
+    /**
+     * Marks sectors that are already in use, such as the header or chunks found when the file is opened
+     *
+     * @param start the first sector
+     * @param count the amount of sectors
+     */
+    void markUsed(int start, int count) {
+        set(start, count, true);
+        if (firstFree >= start && firstFree < start + count) {
+            firstFree = nextClear(start + count);
+        }
+    }
+
+    /**
+     * Releases a run of sectors so that it can be allocated again
+     *
+     * @param start the first sector
+     * @param count the amount of sectors
+     */
+    void free(int start, int count) {
+        set(start, count, false);
+        if (start < firstFree) {
+            firstFree = start;
+        }
+    }
+
+    /**
+     * Takes the lowest run of free sectors that is long enough, growing the size if there is none
+     *
+     * <p>If the size grows, the caller is responsible for extending the file to {@link #size()} sectors.</p>
+     *
+     * @param count the amount of sectors needed
+     * @return the first sector of the run
+     */
+    int allocate(int count) {
+        int start = nextClear(firstFree);
+        while (start < size) {
+            int end = nextSet(start);
+            if (end - start >= count || end == size) {
+                break;
+            }
+
+            start = nextClear(end);
+        }
+
+        if (start + count > size) {
+            int needed = (start + count + 63) >>> 6;
+            if (needed > words.length) {
+                words = Arrays.copyOf(words, Math.max(needed, words.length * 2));
+            }
+            size = start + count;
+        }
+
+        set(start, count, true);
+        if (start == firstFree) {
+            firstFree = nextClear(start + count);
+        }
+
+        return start;
+    }
+
+    private void set(int start, int count, boolean used) {
+        for (int i = start; i < start + count; i++) {
+            if (used) {
+                words[i >>> 6] |= 1L << i;
+            } else {
+                words[i >>> 6] &= ~(1L << i);
+            }
+        }
+    }
+
+    private int nextClear(int from) {
+        if (from >= size) {
+            return size;
+        }
+
+        int index = from >>> 6;
+        long word = ~words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index >= words.length) {
+                return size;
+            }
+            word = ~words[index];
+        }
+
+        return Math.min(size, (index << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private int nextSet(int from) {
+        if (from >= size) {
+            return size;
+        }
+
+        int index = from >>> 6;
+        long word = words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index >= words.length) {
+                return size;
+            }
+            word = words[index];
+        }
+
+        return Math.min(size, (index << 6) + Long.numberOfTrailingZeros(word));
+    }
+}
@@ -17,7 +17,6 @@
 
 package net.tridentsdk.server.world;
 
-import com.google.common.collect.Lists;
 import net.tridentsdk.base.Block;
 import net.tridentsdk.base.Position;
 import net.tridentsdk.base.Substance;
@@ -26,11 +25,8 @@ import net.tridentsdk.meta.block.AbstractBlockMetaOwner;
 import net.tridentsdk.meta.block.BlockMeta;
 import net.tridentsdk.meta.component.MetaCollection;
 import net.tridentsdk.meta.component.MetaFactory;
-import net.tridentsdk.server.packets.play.out.PacketPlayOutBlockChange;
-import net.tridentsdk.server.player.TridentPlayer;
 import net.tridentsdk.util.Vector;
 
-import java.util.Collections;
 import java.util.List;
 
 public class TridentBlock extends AbstractBlockMetaOwner<Block> implements Block {
@@ -99,11 +95,7 @@ public class TridentBlock extends AbstractBlockMetaOwner<Block> implements Block
         this.material = substance;
         this.data = data;
 
-        TridentPlayer.sendAll(new PacketPlayOutBlockChange()
-                .set("blockId", substance().id() << 4 | data)
-                .set("location", location));
-
-        ((TridentChunk) position().chunk()).setAt(location, substance, data, (byte) 255, (byte) 0);
+        ((TridentChunk) position().chunk()).setAt(location, substance, data);
     }
 
     @Override
@@ -120,11 +112,22 @@ public class TridentBlock extends AbstractBlockMetaOwner<Block> implements Block
     @Override
     public <M extends BlockMeta<Block>> boolean applyMeta(boolean replace, M... meta) {
         TridentChunk chunk = ((TridentChunk) location.chunk());
-        Vector key = new Vector((int) location.x() & 15, location.y(), (int) location.z() & 15);
-        List<BlockMeta> tiles = chunk.tilesInternal().computeIfAbsent(key, k -> Lists.newCopyOnWriteArrayList());
-        Collections.addAll(tiles, meta);
-        chunk.tilesInternal().put(key, tiles);
+        chunk.tilesInternal().add((int) location.x(), (int) location.y(), (int) location.z(), meta);
 
         return super.applyMeta(replace, meta);
     }
+
+    /**
+     * Attaches the metas stored for this block to it, without adding them to the chunk again
+     *
+     * <p>Used to build blocks from the metas held by a chunk or a snapshot.</p>
+     *
+     * @param metas the metas of the block
+     */
+    @SuppressWarnings("unchecked")
+    void attachMetas(List<BlockMeta> metas) {
+        for (BlockMeta meta : metas) {
+            super.applyMeta(true, meta);
+        }
+    }
 }
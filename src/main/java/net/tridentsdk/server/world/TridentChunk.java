@@ -18,9 +18,6 @@
 package net.tridentsdk.server.world;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import net.tridentsdk.base.Block;
 import net.tridentsdk.base.BoundingBox;
 import net.tridentsdk.base.Position;
@@ -34,8 +31,6 @@ import net.tridentsdk.server.chunk.ChunkHandler;
 import net.tridentsdk.server.chunk.ConcurrentSectionTable;
 import net.tridentsdk.server.entity.TridentEntity;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutChunkData;
-import net.tridentsdk.util.NibbleArray;
-import net.tridentsdk.util.Vector;
 import net.tridentsdk.world.Chunk;
 import net.tridentsdk.world.ChunkLocation;
 import net.tridentsdk.world.ChunkSnapshot;
@@ -44,13 +39,11 @@ import net.tridentsdk.world.gen.FeatureGenerator;
 import net.tridentsdk.world.gen.FeatureGenerator.ChunkManipulator;
 
 import javax.annotation.concurrent.GuardedBy;
-import java.io.ByteArrayOutputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class TridentChunk implements Chunk {
     private final TridentWorld world;
@@ -58,12 +51,14 @@ public class TridentChunk implements Chunk {
 
     @GuardedBy("sections")
     public final ConcurrentSectionTable sections = new ConcurrentSectionTable();
-    private final Set<Entity> entities = Sets.newConcurrentHashSet();
-    private final Map<Vector, List<BlockMeta>> blockMeta = Maps.newConcurrentMap();
+    private final ChunkEntityIndex entities = new ChunkEntityIndex();
+    private final ChunkMetaTable blockMeta = new ChunkMetaTable();
     private final AtomicReferenceArray<Integer> heights = new AtomicReferenceArray<>(256);
 
     private volatile int lastFileAccess;
     private volatile long lastModified;
+    // Changes that are not to a section, sections keep track of their own
+    private volatile boolean dirty;
     private volatile long inhabitedTime;
     private final AtomicInteger lightPopulated = new AtomicInteger();
     private final AtomicInteger terrainPopulated = new AtomicInteger();
@@ -96,28 +91,28 @@ public class TridentChunk implements Chunk {
 
     @Override
     public Set<Entity> entities() {
-        return ImmutableSet.copyOf(entities);
+        return ImmutableSet.copyOf(entities.entities());
     }
 
     @Override
     public Collection<Tile> tiles() {
-        List<Tile> concat = Lists.newArrayList();
-        for (List<BlockMeta> metaList : blockMeta.values()) {
-            for (BlockMeta meta : metaList) {
-                if (meta instanceof Tile) {
-                    concat.add((Tile) meta);
-                }
-            }
-        }
-
-        return concat;
+        return blockMeta.tiles();
     }
 
     public Set<Entity> entitiesInternal() {
+        return entities.entities();
+    }
+
+    /**
+     * Obtains the entities of this chunk bucketed by section, which are to be updated as the entities move
+     *
+     * @return the entity index
+     */
+    public ChunkEntityIndex entityIndex() {
         return entities;
     }
 
-    public Map<Vector, List<BlockMeta>> tilesInternal() {
+    public ChunkMetaTable tilesInternal() {
         return blockMeta;
     }
 
@@ -136,24 +131,25 @@ public class TridentChunk implements Chunk {
             for (int i = 0; i < 16; i++) {
                 ChunkSection section = sections.get(i);
 
-                if (blocks != null && blocks.length > 0) {
+                if (blocks != null && i < blocks.length) {
                     char[] sector = blocks[i];
                     if (sector != null && sector.length > 0) {
                         section.setBlocks(sector);
                     }
                 }
 
-                if (data != null && data.length > 0) {
+                if (section.isEmpty()) {
+                    // Nothing was generated here, don't hold onto the arrays
+                    section.trim();
+                    continue;
+                }
+
+                if (data != null && i < data.length) {
                     byte[] sector = data[i];
                     if (sector != null && sector.length > 0) {
                         section.setData(sector);
                     }
                 }
-
-                // DEBUG ===== makes the entire chunk completely lit, not ideal for production
-                Arrays.fill(section.skyLight, (byte) 255);
-                // =====
-                section.updateRaw();
             }
 
             if (withPaint) {
@@ -164,7 +160,8 @@ public class TridentChunk implements Chunk {
         }
 
         lightPopulated.set(0x01);
-        //TODO lighting
+        dirty = true;
+        world.lightEngine().lightChunk(this);
     }
 
     @Override
@@ -178,13 +175,7 @@ public class TridentChunk implements Chunk {
             return false;
         }
 
-        CompoundTag tag = RegionFile.fromPath(world.name(), location).decode(location);
-        if (tag == null) {
-            return false;
-        }
-
-        load(tag);
-        return true;
+        return ((TridentWorldLoader) world.loader()).io().load(this);
     }
 
     public void paint(boolean withLock) {
@@ -202,10 +193,7 @@ public class TridentChunk implements Chunk {
                 if (relX >= 0 && relX <= 15 && relZ >= 0 && relZ <= 15) {
                     int index = WorldUtils.blockArrayIndex(relX & 15, y & 15, relZ & 15);
                     ChunkSection section = sections.get(WorldUtils.section(y));
-                    section.types[index] = (char) (substance.asExtended() & 0xfff0 | data);
-                    NibbleArray.set(section.data, index, data);
-                    NibbleArray.set(section.skyLight, index, (byte) 255);
-                    NibbleArray.set(section.blockLight, index, (byte) 255);
+                    section.setType(index, (char) (substance.asExtended() & 0xfff0 | data));
                     return;
                 }
 
@@ -240,7 +228,7 @@ public class TridentChunk implements Chunk {
 
                 ChunkLocation loc = ChunkLocation.create(chunkX, chunkZ);
                 TridentChunk chunk = localCache.computeIfAbsent(loc, k -> rawChunk(loc));
-                chunk.setAt(newX, y, newZ, substance, data, (byte) 255, (byte) 15);
+                chunk.setAt(newX, y, newZ, substance, data);
             }
 
             @Override
@@ -248,8 +236,9 @@ public class TridentChunk implements Chunk {
                 if (relX >= 0 && relX <= 15 && relZ >= 0 && relZ <= 15) {
                     ChunkSection section = sections.get(WorldUtils.section(y));
                     int index = WorldUtils.blockArrayIndex(relX, y & 15, relZ);
-                    byte b = (byte) (section.types[index] >> 4);
-                    byte meta = (byte) (section.types[index] & 0xF);
+                    char type = section.typeAt(index);
+                    byte b = (byte) (type >> 4);
+                    byte meta = (byte) (type & 0xF);
 
                     Substance material = Substance.fromId(b);
 
@@ -259,12 +248,9 @@ public class TridentChunk implements Chunk {
 
                     TridentBlock block = new TridentBlock(Position.create(world, relX + x() * 16, y, relZ + z() * 16),
                             material, meta);
-                    Vector key = new Vector(relX, y, relZ);
-                    List<BlockMeta> metas = blockMeta.get(key);
+                    List<BlockMeta> metas = blockMeta.get(relX, y, relZ);
                     if (metas != null) {
-                        for (BlockMeta m : metas) {
-                            block.applyMeta(m);
-                        }
+                        block.attachMetas(metas);
                     }
 
                     return block;
@@ -336,6 +322,49 @@ public class TridentChunk implements Chunk {
         return heights.get(WorldUtils.heightIndex(x, z));
     }
 
+    /**
+     * Obtains the block id and data packed as {@code id << 4 | data} at the given position without locking or
+     * creating any objects
+     *
+     * <p>Only the lower 4 bits of x and z are used, so both relative and world coordinates are accepted.</p>
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the packed type, or {@code 0} (air) if y is outside of the world
+     */
+    public char packedAt(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return 0;
+        }
+
+        return sections.get(WorldUtils.section(y)).typeAt(WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15));
+    }
+
+    /**
+     * Obtains the block id at the given position without locking or creating any objects
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the block id, {@code 0} for air
+     */
+    public int typeAt(int x, int y, int z) {
+        return packedAt(x, y, z) >> 4;
+    }
+
+    /**
+     * Obtains the block data at the given position without locking or creating any objects
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the block data, from 0 to 15
+     */
+    public int dataAt(int x, int y, int z) {
+        return packedAt(x, y, z) & 15;
+    }
+
     @Override
     public int x() {
         return location.x();
@@ -362,8 +391,9 @@ public class TridentChunk implements Chunk {
         int sectionIndex = WorldUtils.section(y);
         return sections.modifyAndReturn(sectionIndex, section -> {
             /* Get block data; use extras accordingly */
-            byte b = (byte) (section.types[index] >> 4);
-            byte meta = (byte) (section.types[index] & 0xF);
+            char type = section.typeAt(index);
+            byte b = (byte) (type >> 4);
+            byte meta = (byte) (type & 0xF);
 
             Substance material = Substance.fromId(b);
 
@@ -373,45 +403,149 @@ public class TridentChunk implements Chunk {
 
             TridentBlock block = new TridentBlock(Position.create(world, relX + x() * 16, y, relZ + z() * 16),
                     material, meta);
-            Vector key = new Vector(relX, y, relZ);
-            List<BlockMeta> metas = blockMeta.get(key);
+            // Already in the table, attaching them through applyMeta would add them again
+            List<BlockMeta> metas = blockMeta.get(relX, y, relZ);
             if (metas != null) {
-                for (BlockMeta m : metas) {
-                    block.applyMeta(m);
-                }
+                block.attachMetas(metas);
             }
 
             return block;
         });
     }
 
+    /**
+     * Whether or not the chunk has changed since it was last saved
+     *
+     * @return {@code true} if the chunk needs to be saved
+     */
+    public boolean isDirty() {
+        if (dirty) {
+            return true;
+        }
+
+        for (int i = 0; i < 16; i++) {
+            if (sections.get(i).isDirty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks the chunk as changed, so that it is written on the next save
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Estimates the amount of heap memory taken up by this chunk's block data
+     *
+     * @return the approximate size of this chunk, in bytes
+     */
+    public long footprint() {
+        // Heights, locks, and the object headers for the chunk and its sections
+        long size = 2048;
+        for (int i = 0; i < 16; i++) {
+            size += sections.get(i).footprint();
+        }
+
+        return size;
+    }
+
     @Override
     public ChunkSnapshot snapshot() {
         return new TridentChunkSnapshot(world, this);
     }
 
-    public PacketPlayOutChunkData asPacket() {
+    /**
+     * Takes a copy-on-write snapshot of every section, holding each section lock only while it is captured
+     *
+     * @return the section snapshots, indexed by section y
+     */
+    SectionSnapshot[] snapshotSections() {
+        SectionSnapshot[] snapshots = new SectionSnapshot[16];
+        for (int i = 0; i < 16; i++) {
+            snapshots[i] = sections.modifyAndReturn(i, ChunkSection::snapshot);
+        }
+
+        return snapshots;
+    }
+
+    int[] rawHeights() {
+        int[] rawHeights = new int[256];
+        for (int i = 0; i < 256; i++) {
+            rawHeights[i] = heights.get(i);
+        }
+
+        return rawHeights;
+    }
+
+    int lightPopulated() {
+        return lightPopulated.get();
+    }
+
+    int terrainPopulated() {
+        return terrainPopulated.get();
+    }
+
+    /**
+     * Replaces the blocks, light and heights of this chunk with those of the given snapshot
+     *
+     * <p>The snapshot's arrays are shared with the sections until they are next written to.</p>
+     *
+     * @param snapshot the snapshot to restore
+     */
+    void restore(TridentChunkSnapshot snapshot) {
         sections.lockFully();
         try {
-            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int i = 0; i < 16; i++) {
+                snapshot.section(i).restore(sections.get(i));
+            }
+        } finally {
+            sections.release();
+        }
+
+        int[] rawHeights = snapshot.heights();
+        for (int i = 0; i < 256; i++) {
+            heights.set(i, rawHeights[i]);
+        }
 
+        lightPopulated.set(snapshot.lightPopulated());
+        terrainPopulated.set(snapshot.terrainPopulated());
+        dirty = true;
+    }
+
+    public PacketPlayOutChunkData asPacket() {
+        sections.lockFully();
+        try {
             NewChunkSection[] newChunkSections = new NewChunkSection[16];
+            int bitmask = 0;
             for (int i = 0; i < 16; i++) {
-                NewChunkSection newChunkSection = new NewChunkSection();
+                ChunkSection section = sections.get(i);
+                // Empty sections are left out of the bitmask unless they hold light, the client assumes they are
+                // air lit by the sky
+                if (section.isEmpty() && !section.hasLight()) {
+                    continue;
+                }
 
-                for (int x = 0; x < 16; x++) {
-                    for (int y = 0; y < 16; y++) {
-                        for (int z = 0; z < 16; z++) {
-                            newChunkSection.setBlock(x, y, z, 1, 3);
-                        }
+                NewChunkSection newChunkSection = new NewChunkSection();
+                char[] types = section.types();
+                if (types != null) {
+                    for (int j = 0; j < ChunkSection.LENGTH; j++) {
+                        char type = types[j];
+                        newChunkSection.setBlock(j, type >> 4, type & 0xF);
                     }
                 }
 
+                newChunkSection.setBlockLight(section.copyLight(false));
+                newChunkSection.setSkyLight(section.copyLight(true));
+
                 newChunkSections[i] = newChunkSection;
+                bitmask |= 1 << i;
             }
 
-            // fixme unused value
-            int bitmask = 0xFFFF;
             return new PacketPlayOutChunkData(newChunkSections, location, true, bitmask);
         } finally {
             sections.release();
@@ -474,6 +608,65 @@ public class TridentChunk implements Chunk {
         this.inhabitedTime = inhabitedTime.value(); // Cumulative number of ticks player have been in the chunk
     }
 
+    /**
+     * Loads the chunk from the sections and values read by the streaming decoder
+     *
+     * @param decoded the decoded chunk
+     */
+    void load(AnvilChunkDecoder decoded) {
+        int[] rawHeight = decoded.heights();
+        if (rawHeight != null) {
+            for (int i = 0; i < 256 && i < rawHeight.length; i++) {
+                heights.set(i, rawHeight[i]);
+            }
+        }
+
+        /* Load sections */
+        sections.lockFully();
+        try {
+            for (ChunkSection section : decoded.sections()) {
+                if (section != null) {
+                    sections.set(section.y(), section);
+                }
+            }
+        } finally {
+            sections.release();
+        }
+
+        this.lightPopulated.set(decoded.lightPopulated());
+        this.terrainPopulated.set(decoded.terrainPopulated());
+        lastModified = decoded.lastUpdate();
+        this.inhabitedTime = decoded.inhabitedTime();
+    }
+
+    /**
+     * Loads the chunk from a save that hasn't been written yet
+     *
+     * <p>The block arrays are shared with the save's snapshots until they are next written to.</p>
+     *
+     * @param save the captured state
+     */
+    void load(ChunkSave save) {
+        sections.lockFully();
+        try {
+            for (int i = 0; i < 16; i++) {
+                save.section(i).restore(sections.get(i));
+            }
+        } finally {
+            sections.release();
+        }
+
+        int[] rawHeights = save.heights();
+        for (int i = 0; i < 256; i++) {
+            heights.set(i, rawHeights[i]);
+        }
+
+        this.lightPopulated.set(save.lightPopulated());
+        this.terrainPopulated.set(save.terrainPopulated());
+        lastModified = save.lastUpdate();
+        this.inhabitedTime = save.inhabitedTime();
+    }
+
     @Override
     // todo refactor to boolean
     public void unload() {
@@ -490,7 +683,9 @@ public class TridentChunk implements Chunk {
                 }
             }
 
-            world.loader().saveChunk(this);
+            if (isDirty()) {
+                world.loader().saveChunk(this);
+            }
             chunkHandler.remove(location);
         } finally {
             sections.release();
@@ -498,64 +693,63 @@ public class TridentChunk implements Chunk {
     }
 
     public CompoundTag asNbt() {
-        CompoundTag root = new CompoundTag("root");
-        CompoundTag level = new CompoundTag("Level");
-
-        level.addTag(new LongTag("LastUpdate").setValue(world.time()));
-        level.addTag(new ByteTag("LightPopulated").setValue((byte) lightPopulated.get()));
-        level.addTag(new ByteTag("TerrainPopulated").setValue((byte) terrainPopulated.get()));
-
-        level.addTag(new LongTag("InhabitedTime").setValue(inhabitedTime));
-
-        int[] rawHeights = new int[256];
-        for (int i = 0; i < 256; i++) {
-            rawHeights[i] = heights.get(i);
-        }
-
-        level.addTag(new IntArrayTag("HeightMap").setValue(rawHeights));
-
-        ListTag sectionTags = new ListTag("Sections", TagType.COMPOUND);
+        return prepareSave().asNbt();
+    }
 
+    /**
+     * Captures the state of the chunk to be saved, which is then serialized without locking
+     *
+     * <p>Sections are captured as copy-on-write snapshots while holding their lock only briefly, so the chunk can
+     * keep being modified while it is serialized and compressed on another thread.</p>
+     *
+     * @return the captured state
+     */
+    public ChunkSave prepareSave() {
+        // Cleared first so changes made while saving are picked up by the next save
+        dirty = false;
+
+        SectionSnapshot[] snapshots = new SectionSnapshot[16];
         for (int i = 0; i < 16; i++) {
-            sections.modify(i, section -> {
-                section.updateRaw();
-                sectionTags.addTag(NBTSerializer.serialize(section));
-            });
+            snapshots[i] = sections.modifyAndReturn(i, ChunkSection::saveSnapshot);
         }
 
-        level.addTag(sectionTags);
-
-        ListTag tag = new ListTag("Entities", TagType.COMPOUND);
+        List<CompoundTag> entityTags = new ArrayList<>();
         for (Entity entity : entities()) {
-            tag.addTag(((TridentEntity) entity).asNbt());
+            entityTags.add(((TridentEntity) entity).asNbt());
         }
-        level.addTag(tag);
-
-        root.addTag(level);
 
-        return root;
+        return new ChunkSave(snapshots, rawHeights(), world.time(), (byte) lightPopulated.get(),
+                (byte) terrainPopulated.get(), inhabitedTime, entityTags);
     }
 
-    public void setAt(Position p, Substance type, byte metaData, byte skyLight, byte blockLight) {
-        setAt((int) p.x(), (int) p.y(), (int) p.z(), type, metaData, skyLight, blockLight);
+    public void setAt(Position p, Substance type, byte metaData) {
+        setAt((int) p.x(), (int) p.y(), (int) p.z(), type, metaData);
     }
 
-    public void setAt(int x, int y, int z, Substance type, byte metaData, byte skyLight,
-                      byte blockLight) {
+    /**
+     * Sets the block at the given position
+     *
+     * <p>The light around the block is updated by the world's light engine, and the change is sent to players on
+     * the next tick.</p>
+     *
+     * @param x        the x coordinate, only the position inside the chunk is used
+     * @param y        the y coordinate
+     * @param z        the z coordinate, only the position inside the chunk is used
+     * @param type     the block type
+     * @param metaData the block data
+     */
+    public void setAt(int x, int y, int z, Substance type, byte metaData) {
         int index = WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15);
-        sections.modify(WorldUtils.section(y), section -> {
-            section.types[index] = (char) (type.asExtended() & 0xfff0 | metaData);
-            NibbleArray.set(section.data, index, metaData);
-            NibbleArray.set(section.skyLight, index, skyLight);
-            NibbleArray.set(section.blockLight, index, blockLight);
-        });
+        sections.modify(WorldUtils.section(y), section -> section.setType(index,
+                (char) (type.asExtended() & 0xfff0 | metaData)));
+        world.lightEngine().blockChanged(location.x() << 4 | x & 15, y, location.z() << 4 | z & 15);
+        world.blockUpdates().queue(this, x, y, z);
     }
 
     @Override
     public ArrayList<Entity> getEntities(Entity exclude, BoundingBox boundingBox, Predicate<? super Entity> predicate){
-        return new ArrayList<>(entities.stream()
-                .filter(checking -> !checking.equals(exclude) && checking.boundingBox().collidesWith(boundingBox))
-                .filter(checking -> predicate == null || predicate.test(checking))
-                .collect(Collectors.toList()));
+        ArrayList<Entity> list = new ArrayList<>();
+        entities.collect(exclude, boundingBox, predicate, list);
+        return list;
     }
 }
\ No newline at end of file
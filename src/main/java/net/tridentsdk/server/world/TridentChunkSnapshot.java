@@ -19,52 +19,139 @@ package net.tridentsdk.server.world;
 
 import net.tridentsdk.base.Block;
 import net.tridentsdk.base.BoundingBox;
+import net.tridentsdk.base.Position;
+import net.tridentsdk.base.Substance;
 import net.tridentsdk.entity.Entity;
+import net.tridentsdk.meta.block.BlockMeta;
 import net.tridentsdk.meta.block.Tile;
-import net.tridentsdk.meta.nbt.CompoundTag;
 import net.tridentsdk.world.Chunk;
 import net.tridentsdk.world.ChunkLocation;
 import net.tridentsdk.world.ChunkSnapshot;
 import net.tridentsdk.world.World;
 
+import javax.annotation.concurrent.Immutable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Predicate;
 
+/**
+ * An immutable copy of a chunk at a point in time
+ *
+ * <p>The block arrays are shared copy-on-write with the live chunk, so taking a snapshot does not copy any block
+ * data, only the light. Reads go straight to the arrays without locking or decoding, and can be done from any
+ * thread.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@Immutable
 public class TridentChunkSnapshot implements ChunkSnapshot {
     private final TridentWorld world;
     private final ChunkLocation location;
-    private final CompoundTag tag;
+    private final SectionSnapshot[] sections;
+    private final int[] heights;
+    private final int lightPopulated;
+    private final int terrainPopulated;
+    private final Set<Entity> entities;
+    private final ChunkMetaTable blockMeta;
 
     public TridentChunkSnapshot(TridentWorld world, TridentChunk chunk) {
         this.world = world;
         this.location = chunk.location();
-        this.tag = chunk.asNbt();
+        this.sections = chunk.snapshotSections();
+        this.heights = chunk.rawHeights();
+        this.lightPopulated = chunk.lightPopulated();
+        this.terrainPopulated = chunk.terrainPopulated();
+        this.entities = chunk.entities();
+
+        this.blockMeta = chunk.tilesInternal().copy();
+    }
+
+    /**
+     * Obtains the block id and data packed as {@code id << 4 | data} at the given position
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the packed type, or {@code 0} (air) if y is outside of the world
+     */
+    public char packedAt(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return 0;
+        }
+
+        return sections[WorldUtils.section(y)].typeAt(WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15));
+    }
+
+    /**
+     * Obtains the block id at the given position
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the block id, {@code 0} for air
+     */
+    public int typeAt(int x, int y, int z) {
+        return packedAt(x, y, z) >> 4;
+    }
+
+    /**
+     * Obtains the block data at the given position
+     *
+     * @param x the x coordinate, only the position inside the chunk is used
+     * @param y the y coordinate
+     * @param z the z coordinate, only the position inside the chunk is used
+     * @return the block data, from 0 to 15
+     */
+    public int dataAt(int x, int y, int z) {
+        return packedAt(x, y, z) & 15;
+    }
+
+    /**
+     * Obtains the snapshot of the section at the given height
+     *
+     * @param y the section y, from 0 to 15
+     * @return the section snapshot
+     */
+    public SectionSnapshot section(int y) {
+        return sections[y];
+    }
+
+    public int maxHeightAt(int x, int z) {
+        return heights[WorldUtils.heightIndex(x, z)];
+    }
+
+    int[] heights() {
+        return heights;
+    }
+
+    int lightPopulated() {
+        return lightPopulated;
+    }
+
+    int terrainPopulated() {
+        return terrainPopulated;
     }
 
     @Override
     public void apply(Chunk chunk) {
-        ((TridentChunk) chunk).load(tag);
+        ((TridentChunk) chunk).restore(this);
     }
 
     @Override
     public void apply() {
-        ((TridentChunk) world().chunkAt(location(), true)).load(tag);
+        world.chunkAt(location, true).restore(this);
     }
 
     @Override
     public Set<Entity> entities() {
-        TridentChunk chunk = new TridentChunk((TridentWorld) world(), location);
-        chunk.load(tag);
-        return chunk.entities();
+        return entities;
     }
 
     @Override
     public Collection<Tile> tiles() {
-        TridentChunk chunk = new TridentChunk((TridentWorld) world(), location);
-        chunk.load(tag);
-        return chunk.tiles();
+        return blockMeta.tiles();
     }
 
     @Override
@@ -104,9 +191,21 @@ public class TridentChunkSnapshot implements ChunkSnapshot {
 
     @Override
     public Block blockAt(int relX, int y, int relZ) {
-        TridentChunk chunk = new TridentChunk(((TridentWorld) world()), location);
-        chunk.load(tag);
-        return chunk.blockAt(relX, y, relZ);
+        char type = packedAt(relX, y, relZ);
+        Substance material = Substance.fromId((short) (type >> 4));
+        if (material == null) {
+            material = Substance.AIR;
+        }
+
+        TridentBlock block = new TridentBlock(Position.create(world, relX + x() * 16, y, relZ + z() * 16),
+                material, (byte) (type & 0xF));
+        // The copied metas are only attached, the live chunk is neither looked up nor written to
+        List<BlockMeta> metas = blockMeta.get(relX, y, relZ);
+        if (metas != null) {
+            block.attachMetas(metas);
+        }
+
+        return block;
     }
 
     @Override
@@ -120,6 +219,14 @@ public class TridentChunkSnapshot implements ChunkSnapshot {
     }
 
     public ArrayList<Entity> getEntities(Entity exclude, BoundingBox boundingBox, Predicate<? super Entity> predicate){
-        return new ArrayList<>();
+        ArrayList<Entity> found = new ArrayList<>();
+        for (Entity entity : entities) {
+            if (!entity.equals(exclude) && entity.boundingBox().collidesWith(boundingBox)
+                    && (predicate == null || predicate.test(entity))) {
+                found.add(entity);
+            }
+        }
+
+        return found;
     }
 }
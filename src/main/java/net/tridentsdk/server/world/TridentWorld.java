@@ -48,6 +48,8 @@ import net.tridentsdk.event.weather.ThunderEvent;
 import net.tridentsdk.inventory.Item;
 import net.tridentsdk.meta.block.Tile;
 import net.tridentsdk.meta.nbt.*;
+import net.tridentsdk.server.chunk.ChunkAutoSaver;
+import net.tridentsdk.server.chunk.ChunkEvictor;
 import net.tridentsdk.server.chunk.ChunkHandler;
 import net.tridentsdk.server.concurrent.ThreadsHandler;
 import net.tridentsdk.server.concurrent.TickSync;
@@ -66,6 +68,8 @@ import net.tridentsdk.server.event.EventProcessor;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutSpawnGlobalEntity;
 import net.tridentsdk.server.packets.play.out.PacketPlayOutTimeUpdate;
 import net.tridentsdk.server.player.TridentPlayer;
+import net.tridentsdk.server.world.change.BlockUpdateBuffer;
+import net.tridentsdk.server.world.light.LightEngine;
 import net.tridentsdk.util.Pair;
 import net.tridentsdk.util.TridentLogger;
 import net.tridentsdk.world.*;
@@ -95,13 +99,17 @@ public class TridentWorld implements World {
     private static final int SIZE = 1;
     private static final int MAX_HEIGHT = 255;
     private static final int MAX_CHUNKS = 3_750_000; // 60 million blocks
-    private static final int CHUNK_EVICTION_TIME = 20 * 60 * 5;
 
     private final String name;
     private final WorldLoader loader;
     private final Position spawnPosition;
 
     private final ChunkHandler chunkHandler = new ChunkHandler(this);
+    private final ChunkEvictor chunkEvictor = new ChunkEvictor(chunkHandler);
+    private final ChunkAutoSaver autoSaver = new ChunkAutoSaver(this);
+    private final LightEngine lightEngine = new LightEngine(this);
+    private final BlockUpdateBuffer blockUpdates = new BlockUpdateBuffer(this);
+    private final WorldPregenerator pregenerator = new WorldPregenerator(this);
     private final Set<Entity> entities = Sets.newConcurrentHashSet();
     private final Set<Tile> tiles = Sets.newConcurrentHashSet();
     private final Map<GameRule, GameRule.Value> gameRules = Maps.newHashMap();
@@ -488,14 +496,11 @@ public class TridentWorld implements World {
                 }
             }
 
-            /* if ((existed.get() & CHUNK_EVICTION_TIME) == 0) {
-                UnmodifiableIterator<List<ChunkLocation>> list = Iterators.partition(Sets.newHashSet(chunkHandler.keys()).iterator(),
-                        Math.max(TridentPlayer.players().size(), 1));
-                for (; list.hasNext(); ) {
-                    List<ChunkLocation> chunks = list.next();
-                    ThreadsHandler.chunkExecutor().execute(() -> chunks.forEach(chunkHandler::tryRemove));
-                }
-            } */
+            chunkEvictor.tick(existed.get());
+            autoSaver.tick(existed.get());
+            pregenerator.tick(existed.get());
+            lightEngine.tick();
+            blockUpdates.flush();
 
             if (currentTime >= 24000)
                 time.set(0);
@@ -505,6 +510,15 @@ public class TridentWorld implements World {
         });
     }
 
+    /**
+     * The amount of ticks this world has existed for
+     *
+     * @return the world age, in ticks
+     */
+    public long existed() {
+        return existed.get();
+    }
+
     protected void addChunkAt(ChunkLocation location, Chunk chunk) {
         if (location == null) {
             TridentLogger.get().error(new NullPointerException("Location cannot be null"));
@@ -560,12 +574,25 @@ public class TridentWorld implements World {
             TridentLogger.get().error(ex);
         }
 
+        int saved = 0;
         for (TridentChunk chunk : loadedChunks()) {
-            RegionFile.fromPath(name, chunk.location()).saveChunkData(chunk);
-            // System.out.println("saved " + chunk.x() + ":" + chunk.z());
+            // Chunks that haven't changed since they were loaded or last saved are already on disk
+            if (!chunk.isDirty()) {
+                continue;
+            }
+
+            loader.saveChunk(chunk);
+            saved++;
         }
 
-        TridentLogger.get().log("Saved " + name + " successfully!");
+        pregenerator.saveProgress();
+
+        // Write everything queued, including chunks unloaded or autosaved earlier that are not on disk yet
+        if (loader instanceof TridentWorldLoader) {
+            ((TridentWorldLoader) loader).flushSaves();
+        }
+
+        TridentLogger.get().log("Saved " + name + " successfully! (" + saved + " changed chunks written)");
     }
 
     private Entity internalSpawn(Entity entity) {
@@ -581,12 +608,13 @@ public class TridentWorld implements World {
     public void removeEntity(Entity entity) {
         this.entities.remove(entity);
 
+        double y = entity.position().y();
         TridentChunk c = (TridentChunk) entity.position().chunk();
-        if (!c.entitiesInternal().remove(entity)) {
+        if (!c.entityIndex().remove(entity, y)) {
             for (Chunk chunk : chunkHandler.values()) {
                 // If we don't do this a simple concurrency miss
                 // can lead to a memory leak
-                if (((TridentChunk) chunk).entitiesInternal().remove(entity)) return;
+                if (((TridentChunk) chunk).entityIndex().remove(entity, y)) return;
             }
 
             throw new IllegalStateException("Entity " + entity.entityId() +
@@ -609,6 +637,18 @@ public class TridentWorld implements World {
         return chunkHandler.values();
     }
 
+    public BlockUpdateBuffer blockUpdates() {
+        return blockUpdates;
+    }
+
+    public LightEngine lightEngine() {
+        return lightEngine;
+    }
+
+    public WorldPregenerator pregenerator() {
+        return pregenerator;
+    }
+
     public ChunkHandler chunkHandler() {
         return chunkHandler;
     }
@@ -696,6 +736,99 @@ public class TridentWorld implements World {
         return this.chunkAt(WorldUtils.chunkLocation(x, z), true).blockAt(x & 15, y, z & 15);
     }
 
+    /**
+     * Obtains the block id and data packed as {@code id << 4 | data} at the given world coordinates
+     *
+     * <p>Unlike {@link #blockAt(Position)}, this creates no block, position or meta objects. The only cost is the
+     * chunk lookup, so loops over many blocks should use
+     * {@link #readRegion(int, int, int, int, int, int, char[])} or {@link TridentChunk#packedAt(int, int, int)}
+     * instead.</p>
+     *
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @return the packed type, or {@code 0} (air) if y is outside of the world
+     */
+    public char packedAt(int x, int y, int z) {
+        if (y < 0 || y > 255) {
+            return 0;
+        }
+
+        return this.chunkAt(WorldUtils.chunkLocation(x, z), true).packedAt(x, y, z);
+    }
+
+    /**
+     * Obtains the block id at the given world coordinates without creating a block
+     *
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @return the block id, {@code 0} for air
+     */
+    public int typeAt(int x, int y, int z) {
+        return packedAt(x, y, z) >> 4;
+    }
+
+    /**
+     * Obtains the block data at the given world coordinates without creating a block
+     *
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @return the block data, from 0 to 15
+     */
+    public int dataAt(int x, int y, int z) {
+        return packedAt(x, y, z) & 15;
+    }
+
+    /**
+     * Copies the packed types ({@code id << 4 | data}) of every block in the box from the min coordinates
+     * (inclusive) to the max coordinates (exclusive) into the given array
+     *
+     * <p>Each chunk that the box overlaps is looked up once. The value for a block is stored at
+     * {@code ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX)}.</p>
+     *
+     * @param minX the lowest x coordinate
+     * @param minY the lowest y coordinate
+     * @param minZ the lowest z coordinate
+     * @param maxX the x coordinate past the box
+     * @param maxY the y coordinate past the box
+     * @param maxZ the z coordinate past the box
+     * @param out the array to fill, or {@code null} or a smaller array to create a new one
+     * @return the filled array
+     */
+    public char[] readRegion(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, char[] out) {
+        int sizeX = Math.max(0, maxX - minX);
+        int sizeY = Math.max(0, maxY - minY);
+        int sizeZ = Math.max(0, maxZ - minZ);
+        int volume = sizeX * sizeY * sizeZ;
+        if (out == null || out.length < volume) {
+            out = new char[volume];
+        }
+
+        for (int cx = minX >> 4; cx <= (maxX - 1) >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= (maxZ - 1) >> 4; cz++) {
+                TridentChunk chunk = this.chunkAt(ChunkLocation.create(cx, cz), true);
+
+                int fromX = Math.max(minX, cx << 4);
+                int toX = Math.min(maxX, (cx << 4) + 16);
+                int fromZ = Math.max(minZ, cz << 4);
+                int toZ = Math.min(maxZ, (cz << 4) + 16);
+
+                for (int y = minY; y < maxY; y++) {
+                    for (int z = fromZ; z < toZ; z++) {
+                        int row = ((y - minY) * sizeZ + (z - minZ)) * sizeX - minX;
+                        for (int x = fromX; x < toX; x++) {
+                            out[row + x] = chunk.packedAt(x, y, z);
+                        }
+                    }
+                }
+            }
+        }
+
+        return out;
+    }
+
     @Override
     public WorldLoader loader() {
         return loader;
@@ -943,15 +1076,44 @@ public class TridentWorld implements World {
         int maxZ = (int) Math.floor((boundingBox.maxZ() + 2.0D) / 16.0D);
         for (int x = minX; x <= maxX; x++) {
             for (int z = minZ; z <= maxZ; z++) {
-                Chunk chunk = chunkAt(x, z, false);
+                TridentChunk chunk = chunkAt(ChunkLocation.create(x, z), false);
                 if (chunk != null) {
-                    list.addAll(chunk.getEntities(exclude, boundingBox, predicate));
+                    chunk.entityIndex().collect(exclude, boundingBox, predicate, list);
                 }
             }
         }
         return list;
     }
 
+    /**
+     * Collects the entities whose position is within the given distance of a point
+     *
+     * <p>Only the loaded chunks and sections that the sphere overlaps are searched.</p>
+     *
+     * @param center    the center of the sphere
+     * @param radius    the distance from the center
+     * @param predicate the filter for the entities, or {@code null}
+     * @param out       the collection to add the entities found to
+     */
+    public void entitiesInRange(Position center, double radius, Predicate<? super Entity> predicate,
+                                Collection<? super Entity> out) {
+        double x = center.x();
+        double y = center.y();
+        double z = center.z();
+        int minX = (int) Math.floor(x - radius) >> 4;
+        int maxX = (int) Math.floor(x + radius) >> 4;
+        int minZ = (int) Math.floor(z - radius) >> 4;
+        int maxZ = (int) Math.floor(z + radius) >> 4;
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                TridentChunk chunk = chunkAt(ChunkLocation.create(cx, cz), false);
+                if (chunk != null) {
+                    chunk.entityIndex().collectInRange(x, y, z, radius, predicate, out);
+                }
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return name + "@" + hashCode();
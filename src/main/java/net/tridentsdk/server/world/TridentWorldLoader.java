@@ -60,6 +60,7 @@ public class TridentWorldLoader implements WorldLoader {
     private final List<FeatureGenerator> brushes = new CopyOnWriteArrayList<>();
     private volatile ChunkGenerator generator;
     volatile TridentWorld world;
+    private final ChunkIoService io = new ChunkIoService(this);
 
     public TridentWorldLoader(WorldCreateOptions opt) {
         this.opt = opt;
@@ -179,7 +180,7 @@ public class TridentWorldLoader implements WorldLoader {
     @Override
     public boolean chunkExists(int x, int z) {
         checkNotNull();
-        return new File(world.name() + "/region/", WorldUtils.regionFile(x, z)).exists();
+        return io.exists(ChunkLocation.create(x, z));
     }
 
     @Override
@@ -195,13 +196,38 @@ public class TridentWorldLoader implements WorldLoader {
     @Override
     public TridentChunk loadChunk(ChunkLocation location) {
         checkNotNull();
-        return RegionFile.fromPath(world.name(), location).loadChunkData(world, location);
+
+        TridentChunk chunk = new TridentChunk(world, location);
+        return io.load(chunk) ? chunk : null;
     }
 
+    /**
+     * Saves the chunk in the background
+     *
+     * <p>The chunk's state is captured on the calling thread, then it is serialized, compressed and written by the
+     * chunk I/O service.</p>
+     *
+     * @param chunk the chunk to save
+     */
     @Override
     public void saveChunk(Chunk chunk) {
-        RegionFile.fromPath(chunk.world().name(), chunk.location())
-                .saveChunkData((TridentChunk) chunk);
+        io.save(chunk.location(), ((TridentChunk) chunk).prepareSave());
+    }
+
+    /**
+     * Writes the chunks that are waiting to be saved, returning once they are on disk
+     */
+    public void flushSaves() {
+        io.flush();
+    }
+
+    /**
+     * The service reading and writing the chunks of this loader's world
+     *
+     * @return the chunk I/O service
+     */
+    public ChunkIoService io() {
+        return io;
     }
 
     @Override
@@ -0,0 +1,487 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.server.TridentServer;
+import net.tridentsdk.server.chunk.ChunkHandler;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.util.TridentLogger;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates the chunks within a radius of a world ahead of time, so players exploring it don't wait on the generator
+ *
+ * <p>Chunks are visited in a spiral outwards from the center, a configured amount at a time on the generator
+ * executor, one chunk per task. Terrain is generated in parallel, while populating is done one chunk at a time as it
+ * writes into the neighbouring chunks. Each new chunk is saved once it has been lit and removed from memory again,
+ * chunks that already exist are skipped. New chunks are only started while the server keeps up with its ticks and
+ * the I/O service keeps up with the saves.</p>
+ *
+ * <p>Progress is written to the world folder periodically and whenever the world is saved, so a run interrupted by
+ * a restart continues where it left off.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class WorldPregenerator {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int IN_FLIGHT = tridentCfg.getInt("pregen-chunks-in-flight", 64);
+    private static final int MAX_TICK_MILLIS = tridentCfg.getInt("pregen-max-tick-millis", 55);
+    // Saves waiting to be written before new chunks are held back
+    private static final int MAX_PENDING_SAVES = IN_FLIGHT * 4;
+    private static final int PROGRESS_INTERVAL_TICKS = 20 * 30;
+    private static final String PROGRESS_FILE = "pregen.dat";
+
+    private final TridentWorld world;
+    private volatile Run run;
+    private volatile boolean resumeChecked;
+    private volatile boolean throttled;
+
+    WorldPregenerator(TridentWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Starts generating the chunks within the given radius of a chunk
+     *
+     * @param centerX  the x of the center chunk
+     * @param centerZ  the z of the center chunk
+     * @param radius   the radius, in chunks
+     * @param circular {@code true} to generate a circle, {@code false} for a square
+     * @return {@code false} if a run is already in progress for this world
+     */
+    public boolean start(int centerX, int centerZ, int radius, boolean circular) {
+        Run started = new Run(centerX, centerZ, radius, circular, 0);
+        synchronized (this) {
+            if (run != null) {
+                return false;
+            }
+
+            resumeChecked = true;
+            run = started;
+            saveProgress();
+        }
+
+        TridentLogger.get().log("Pre-generating " + started.total + " chunks of " + world.name() + "...");
+        return true;
+    }
+
+    /**
+     * Cancels the current run, chunks being generated are still saved
+     *
+     * @return {@code false} if there was nothing to cancel
+     */
+    public boolean stop() {
+        synchronized (this) {
+            if (run == null) {
+                return false;
+            }
+
+            run = null;
+            deleteProgress();
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether or not chunks are being generated
+     *
+     * @return {@code true} if a run is in progress
+     */
+    public boolean isRunning() {
+        return run != null;
+    }
+
+    /**
+     * Describes how far the current run is, how fast it is going and how long it has left
+     *
+     * @return the progress, or {@code null} if nothing is being generated
+     */
+    public String progress() {
+        Run run = this.run;
+        if (run == null) {
+            return null;
+        }
+
+        long completed = run.completed();
+        double rate = run.throughput();
+        String message = world.name() + ": " + completed + "/" + run.total + " chunks (" + completed * 100 / run.total
+                + "%), " + run.generated() + " generated, " + String.format("%.1f", rate) + " chunks/s";
+        if (rate > 0) {
+            message += ", about " + TimeUnit.SECONDS.toMinutes((long) ((run.total - completed) / rate))
+                    + " minutes left";
+        }
+
+        return throttled ? message + " (held back, the server is busy)" : message;
+    }
+
+    /**
+     * Starts new chunks if the server is keeping up, and records the progress from time to time
+     *
+     * @param tick the current world tick
+     */
+    void tick(long tick) {
+        if (!resumeChecked) {
+            resumeChecked = true;
+            resume();
+        }
+
+        Run run = this.run;
+        if (run == null) {
+            return;
+        }
+
+        ChunkIoService io = ((TridentWorldLoader) world.loader()).io();
+        throttled = TridentServer.instance().mainThread().getAverageTickLength() > MAX_TICK_MILLIS
+                || io.pendingCount() >= MAX_PENDING_SAVES;
+        if (!throttled) {
+            dispatch(run);
+        }
+
+        if (run.isFinished()) {
+            finish(run);
+        } else if (tick % PROGRESS_INTERVAL_TICKS == 0) {
+            saveProgress();
+            TridentLogger.get().log("Pre-generating " + progress());
+        }
+    }
+
+    private void dispatch(Run run) {
+        synchronized (run) {
+            while (run.inFlight.size() < IN_FLIGHT && run.next < run.indices) {
+                long index = run.next++;
+                if (!run.contains(index)) {
+                    continue;
+                }
+
+                run.inFlight.add(index);
+                ChunkLocation location = ChunkLocation.create(run.centerX + spiralX(index),
+                        run.centerZ + spiralZ(index));
+                ThreadsHandler.genExecutor().execute(() -> generate(run, index, location));
+            }
+        }
+    }
+
+    private void generate(Run run, long index, ChunkLocation location) {
+        ChunkHandler handler = world.chunkHandler();
+        if (handler.get(location) != null) {
+            // Loaded by a player or by populating a neighbour, which may still be waiting for its light, so it is
+            // written out and dropped after the next light batch if nothing is using it
+            long idleSince = world.existed();
+            world.lightEngine().afterNextBatch(() -> {
+                try {
+                    handler.tryEvict(location, idleSince);
+                } finally {
+                    run.complete(index, false);
+                }
+            });
+            return;
+        }
+
+        TridentChunk chunk;
+        try {
+            chunk = generate(handler, location);
+        } catch (Exception e) {
+            TridentLogger.get().error(e);
+            chunk = null;
+        }
+
+        if (chunk == null) {
+            run.complete(index, false);
+            return;
+        }
+
+        // Light is only spread through loaded chunks, so the chunk is unloaded once it has been lit
+        TridentChunk generated = chunk;
+        world.lightEngine().afterNextBatch(() -> ThreadsHandler.chunkExecutor().execute(() -> {
+            try {
+                generated.unload();
+            } catch (Exception e) {
+                TridentLogger.get().error(e);
+            } finally {
+                run.complete(index, true);
+            }
+        }));
+    }
+
+    // Generates the chunk if it doesn't exist yet, returning null if there was nothing to do
+    private TridentChunk generate(ChunkHandler handler, ChunkLocation location) {
+        if (((TridentWorldLoader) world.loader()).io().exists(location)) {
+            return null;
+        }
+
+        TridentChunk chunk = new TridentChunk(world, location);
+        if (!handler.putIfAbsent(chunk)) {
+            return null;
+        }
+
+        chunk.gen(false);
+        handler.paint(chunk);
+        return chunk;
+    }
+
+    private void finish(Run run) {
+        synchronized (this) {
+            if (this.run != run) {
+                return;
+            }
+
+            this.run = null;
+            deleteProgress();
+        }
+
+        TridentLogger.get().success("Finished pre-generating " + world.name() + ", " + run.generated()
+                + " chunks generated at " + String.format("%.1f", run.throughput()) + " chunks/s");
+    }
+
+    private Path progressFile() {
+        return Paths.get(world.name(), PROGRESS_FILE);
+    }
+
+    // Continues the run that was in progress when the server stopped, if any
+    private void resume() {
+        Path path = progressFile();
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            Run resumed = new Run(in.readInt(), in.readInt(), in.readInt(), in.readBoolean(), in.readLong());
+            synchronized (this) {
+                if (run == null) {
+                    run = resumed;
+                }
+            }
+
+            TridentLogger.get().log("Resuming the pre-generation of " + progress());
+        } catch (IOException e) {
+            TridentLogger.get().error("Could not read the pre-generation progress of " + world.name());
+            TridentLogger.get().error(e);
+        }
+    }
+
+    /**
+     * Writes how far the current run is, chunks before the first one still being generated are not generated again
+     */
+    void saveProgress() {
+        synchronized (this) {
+            Run run = this.run;
+            if (run == null) {
+                return;
+            }
+
+            Path path = progressFile();
+            Path temp = path.resolveSibling(PROGRESS_FILE + ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                    out.writeInt(run.centerX);
+                    out.writeInt(run.centerZ);
+                    out.writeInt(run.radius);
+                    out.writeBoolean(run.circular);
+                    out.writeLong(run.watermark());
+                }
+
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                TridentLogger.get().error("Could not save the pre-generation progress of " + world.name());
+                TridentLogger.get().error(e);
+            }
+        }
+    }
+
+    private void deleteProgress() {
+        try {
+            Files.deleteIfExists(progressFile());
+        } catch (IOException e) {
+            TridentLogger.get().error(e);
+        }
+    }
+
+    // The ring of the spiral the index is on, ring k holds the indices from (2k - 1)^2 to (2k + 1)^2 - 1
+    private static long ring(long index) {
+        long k = (long) Math.ceil((Math.sqrt(index + 1) - 1) / 2);
+        // Corrects the rounding of the square root
+        while ((2 * k + 1) * (2 * k + 1) <= index) {
+            k++;
+        }
+        while (k > 0 && (2 * k - 1) * (2 * k - 1) > index) {
+            k--;
+        }
+
+        return k;
+    }
+
+    // Each ring is walked counterclockwise, one side of 2k chunks at a time
+    private static int spiralX(long index) {
+        long k = ring(index);
+        if (k == 0) return 0;
+
+        long offset = index - (2 * k - 1) * (2 * k - 1);
+        long pos = offset % (2 * k);
+        switch ((int) (offset / (2 * k))) {
+            case 0: return (int) k;
+            case 1: return (int) (k - 1 - pos);
+            case 2: return (int) -k;
+            default: return (int) (-k + 1 + pos);
+        }
+    }
+
+    private static int spiralZ(long index) {
+        long k = ring(index);
+        if (k == 0) return 0;
+
+        long offset = index - (2 * k - 1) * (2 * k - 1);
+        long pos = offset % (2 * k);
+        switch ((int) (offset / (2 * k))) {
+            case 0: return (int) (-k + 1 + pos);
+            case 1: return (int) k;
+            case 2: return (int) (k - 1 - pos);
+            default: return (int) -k;
+        }
+    }
+
+    /**
+     * A single pre-generation run, the chunks handed out and finished so far
+     */
+    @ThreadSafe
+    private static final class Run {
+        private final int centerX;
+        private final int centerZ;
+        private final int radius;
+        private final boolean circular;
+        // The spiral indices covering the square around the center
+        private final long indices;
+        // The chunks of the shape
+        private final long total;
+        private final long startNanos = System.nanoTime();
+        private final long completedAtStart;
+
+        @GuardedBy("this")
+        private long next;
+        @GuardedBy("this")
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+        @GuardedBy("this")
+        private long completed;
+        @GuardedBy("this")
+        private long generated;
+
+        Run(int centerX, int centerZ, int radius, boolean circular, long next) {
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.radius = radius;
+            this.circular = circular;
+            this.indices = (2L * radius + 1) * (2L * radius + 1);
+            this.next = next;
+
+            long total = indices;
+            long completed = next;
+            if (circular) {
+                // The rings before the one of the next index make up a square, only its own ring is walked
+                long ring = ring(next);
+                total = inCircle(radius, radius);
+                completed = inCircle(radius, ring - 1);
+                for (long i = (2 * ring - 1) * (2 * ring - 1); i < next; i++) {
+                    if (contains(i)) {
+                        completed++;
+                    }
+                }
+            }
+
+            this.total = total;
+            this.completed = completed;
+            this.completedAtStart = completed;
+        }
+
+        // The chunks of the circle that are within the square of the given half side around the center
+        private static long inCircle(long radius, long half) {
+            long count = 0;
+            long limit = Math.min(half, radius);
+            for (long x = -limit; x <= limit; x++) {
+                long remaining = radius * radius - x * x;
+                long column = (long) Math.sqrt(remaining);
+                // Corrects the rounding of the square root
+                while (column * column > remaining) {
+                    column--;
+                }
+                while ((column + 1) * (column + 1) <= remaining) {
+                    column++;
+                }
+
+                count += 2 * Math.min(column, half) + 1;
+            }
+
+            return count;
+        }
+
+        boolean contains(long index) {
+            if (!circular) {
+                return true;
+            }
+
+            long x = spiralX(index);
+            long z = spiralZ(index);
+            return x * x + z * z <= (long) radius * radius;
+        }
+
+        synchronized void complete(long index, boolean generated) {
+            inFlight.remove(index);
+            completed++;
+            if (generated) {
+                this.generated++;
+            }
+        }
+
+        // Every chunk before this index has been finished
+        synchronized long watermark() {
+            return inFlight.isEmpty() ? next : inFlight.first();
+        }
+
+        synchronized boolean isFinished() {
+            return next >= indices && inFlight.isEmpty();
+        }
+
+        synchronized long completed() {
+            return completed;
+        }
+
+        synchronized long generated() {
+            return generated;
+        }
+
+        // Chunks per second since the run was started or resumed
+        double throughput() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds <= 0 ? 0 : (completed() - completedAtStart) / seconds;
+        }
+    }
+}
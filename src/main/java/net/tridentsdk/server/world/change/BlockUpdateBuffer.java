@@ -0,0 +1,183 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world.change;
+
+import net.tridentsdk.Trident;
+import net.tridentsdk.base.Position;
+import net.tridentsdk.config.ConfigSection;
+import net.tridentsdk.entity.living.Player;
+import net.tridentsdk.server.data.RecordBuilder;
+import net.tridentsdk.server.netty.packet.Packet;
+import net.tridentsdk.server.packets.play.out.PacketPlayOutBlockChange;
+import net.tridentsdk.server.packets.play.out.PacketPlayOutMultiBlockChange;
+import net.tridentsdk.server.player.TridentPlayer;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.WorldUtils;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Collects the blocks changed in a world and sends them to players once per tick
+ *
+ * <p>Changes are grouped per chunk. When flushed, each chunk sends a single block change, one multi block change,
+ * or the whole chunk again if too many blocks changed, to only the players which have the chunk loaded. The blocks
+ * are read from the chunk when they are sent, so a block changed several times in a tick is only sent once.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class BlockUpdateBuffer {
+    private static final ConfigSection tridentCfg = Trident.config().getConfigSection("performance");
+    private static final int RESEND_THRESHOLD = tridentCfg.getInt("block-update-resend-threshold", 256);
+
+    private final TridentWorld world;
+    private final Map<ChunkLocation, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new update buffer for the given world
+     *
+     * @param world the world which changes are sent for
+     */
+    public BlockUpdateBuffer(TridentWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Queues a changed block to be sent on the next flush
+     *
+     * @param chunk the chunk which the block is in
+     * @param x     the x coordinate, only the position inside the chunk is used
+     * @param y     the y coordinate
+     * @param z     the z coordinate, only the position inside the chunk is used
+     */
+    public void queue(TridentChunk chunk, int x, int y, int z) {
+        // Same layout as the multi block change record
+        short position = (short) ((x & 15) << 12 | (z & 15) << 8 | (y & 0xFF));
+        ChunkLocation location = chunk.location();
+
+        while (true) {
+            Pending changes = pending.computeIfAbsent(location, k -> new Pending(chunk));
+            synchronized (changes) {
+                if (!changes.closed) {
+                    changes.add(position);
+                    return;
+                }
+            }
+
+            // Being flushed, a new one needs to be made for the next tick
+            pending.remove(location, changes);
+        }
+    }
+
+    /**
+     * Sends the changes queued since the last flush
+     */
+    public void flush() {
+        for (Map.Entry<ChunkLocation, Pending> entry : pending.entrySet()) {
+            Pending changes = entry.getValue();
+            short[] positions;
+            int size;
+            synchronized (changes) {
+                changes.closed = true;
+                positions = changes.positions;
+                size = changes.size;
+            }
+
+            pending.remove(entry.getKey(), changes);
+            send(changes.chunk, positions, size);
+        }
+    }
+
+    private void send(TridentChunk chunk, short[] positions, int size) {
+        ChunkLocation location = chunk.location();
+        Predicate<Player> viewing = p -> p.world() == world && ((TridentPlayer) p).knownChunks.contains(location);
+
+        Arrays.sort(positions, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || positions[unique - 1] != positions[i]) {
+                positions[unique++] = positions[i];
+            }
+        }
+
+        Packet packet;
+        if (unique > RESEND_THRESHOLD) {
+            packet = chunk.asPacket();
+        } else if (unique == 1) {
+            int position = positions[0] & 0xFFFF;
+            int x = position >> 12;
+            int z = (position >> 8) & 15;
+            int y = position & 0xFF;
+            char type = chunk.sections.get(y >> 4).typeAt(WorldUtils.blockArrayIndex(x, y & 15, z));
+
+            packet = new PacketPlayOutBlockChange()
+                    .set("location", Position.create(world, (location.x() << 4) + x, y, (location.z() << 4) + z))
+                    .set("type", type >> 4)
+                    .set("meta", type & 15);
+        } else {
+            RecordBuilder[] records = new RecordBuilder[unique];
+            for (int i = 0; i < unique; i++) {
+                int position = positions[i] & 0xFFFF;
+                int x = position >> 12;
+                int z = (position >> 8) & 15;
+                int y = position & 0xFF;
+                char type = chunk.sections.get(y >> 4).typeAt(WorldUtils.blockArrayIndex(x, y & 15, z));
+
+                records[i] = new RecordBuilder()
+                        .setX((byte) x)
+                        .setY((byte) y)
+                        .setZ((byte) z)
+                        .setBlockId(type >> 4)
+                        .setData(type & 15);
+            }
+
+            packet = new PacketPlayOutMultiBlockChange().set("records", records).set("chunkLocation", location);
+        }
+
+        TridentPlayer.sendFiltered(packet, viewing);
+    }
+
+    private static final class Pending {
+        private final TridentChunk chunk;
+        @GuardedBy("this")
+        private short[] positions = new short[8];
+        @GuardedBy("this")
+        private int size;
+        @GuardedBy("this")
+        private boolean closed;
+
+        Pending(TridentChunk chunk) {
+            this.chunk = chunk;
+        }
+
+        void add(short position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size << 1);
+            }
+
+            positions[size++] = position;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world.change;
+
+import com.google.common.collect.Lists;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.server.world.ChunkSection;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.util.TridentLogger;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a large amount of block changes to a world at once
+ *
+ * <p>Changes are grouped by chunk, then sorted so that the changes to a section are applied together while holding
+ * its lock once. The chunks are loaded or generated on the calling thread first. They are independent of each other,
+ * so they are then applied in parallel by the chunk executor and the calling thread, which takes every chunk that the
+ * executor hasn't started on. The caller only ever waits on chunks that are being applied, never on queued tasks.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+final class BulkChangeApplier {
+    private static final int HELPERS = Runtime.getRuntime().availableProcessors();
+
+    private BulkChangeApplier() {
+    }
+
+    /**
+     * Applies the given changes, returning once they have all been made
+     *
+     * <p>If a position is changed more than once, the last change is kept.</p>
+     *
+     * @param world   the world to make the changes in
+     * @param changes the changes to make
+     */
+    static void apply(TridentWorld world, Iterable<BlockChange> changes) {
+        Map<Long, ChunkBatch> batches = new HashMap<>();
+        ChunkBatch last = null;
+        int sequence = 0;
+
+        for (BlockChange change : changes) {
+            int y = change.y();
+            if (y < 0 || y > 255) {
+                continue;
+            }
+
+            int chunkX = change.x() >> 4;
+            int chunkZ = change.z() >> 4;
+            // Mass changes are usually close together, avoid looking up the chunk for every block
+            if (last == null || last.x != chunkX || last.z != chunkZ) {
+                long key = (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+                last = batches.computeIfAbsent(key, k -> new ChunkBatch(chunkX, chunkZ));
+            }
+
+            int index = y << 8 | (change.z() & 15) << 4 | change.x() & 15;
+            char type = (char) ((change.id() & 0xFF) << 4 | change.data() & 15);
+            last.add(index, sequence++, type);
+        }
+
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        List<ChunkBatch> list = Lists.newArrayList(batches.values());
+        // Generating takes the chunk handler's lock, so it is done here instead of serializing the executor's threads
+        for (ChunkBatch batch : list) {
+            batch.chunk = world.chunkAt(ChunkLocation.create(batch.x, batch.z), true);
+        }
+
+        // The threads of the chunk executor must not wait on tasks queued behind them
+        boolean inPool = ThreadsHandler.chunkExecutor().workers().contains(Thread.currentThread());
+        int helpers = inPool ? 0 : Math.min(list.size() - 1, HELPERS);
+        if (helpers == 0) {
+            list.forEach(ChunkBatch::apply);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(list.size());
+        Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < list.size()) {
+                try {
+                    list.get(i).apply();
+                } catch (Exception e) {
+                    TridentLogger.get().error(e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        };
+
+        for (int i = 0; i < helpers; i++) {
+            ThreadsHandler.chunkExecutor().execute(worker);
+        }
+
+        // Helpers that start late find nothing left, what remains once this returns is already being applied
+        worker.run();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ChunkBatch {
+        private final int x;
+        private final int z;
+        private TridentChunk chunk;
+        // Block index in the top 16 bits, then the order of the change, then the packed type
+        private long[] entries = new long[64];
+        private int size;
+
+        ChunkBatch(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        void add(int index, int sequence, char type) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size << 1);
+            }
+
+            entries[size++] = (long) index << 48 | (sequence & 0xFFFFFFFFL) << 16 | type;
+        }
+
+        void apply() {
+            TridentChunk chunk = this.chunk;
+            if (chunk == null) {
+                return;
+            }
+
+            TridentWorld world = chunk.world();
+
+            // Sorted by block index groups the changes by section, the order keeps later changes after earlier ones
+            long[] entries = this.entries;
+            int size = this.size;
+            Arrays.sort(entries, 0, size);
+
+            int start = 0;
+            while (start < size) {
+                int section = (int) (entries[start] >>> 60);
+                int end = start;
+                while (end < size && (int) (entries[end] >>> 60) == section) {
+                    end++;
+                }
+
+                int from = start;
+                int to = end;
+                chunk.sections.modify(section, s -> write(s, entries, from, to));
+                start = end;
+            }
+
+            int baseX = x << 4;
+            int baseZ = z << 4;
+            for (int i = 0; i < size; i++) {
+                int index = (int) (entries[i] >>> 48);
+                // Only the last change to a position needs to be relit and sent
+                if (i + 1 < size && (int) (entries[i + 1] >>> 48) == index) {
+                    continue;
+                }
+
+                int y = index >> 8;
+                int blockZ = (index >> 4) & 15;
+                int blockX = index & 15;
+                world.lightEngine().blockChanged(baseX | blockX, y, baseZ | blockZ);
+                world.blockUpdates().queue(chunk, blockX, y, blockZ);
+            }
+        }
+
+        private static void write(ChunkSection section, long[] entries, int from, int to) {
+            for (int i = from; i < to; i++) {
+                long entry = entries[i];
+                section.setType((int) (entry >>> 48) & 0xFFF, (char) entry);
+            }
+        }
+    }
+}
@@ -18,12 +18,7 @@ package net.tridentsdk.server.world.change;
 
 import net.tridentsdk.base.Position;
 import net.tridentsdk.base.Substance;
-import net.tridentsdk.server.data.RecordBuilder;
-import net.tridentsdk.server.packets.play.out.PacketPlayOutMultiBlockChange;
-import net.tridentsdk.server.player.TridentPlayer;
-import net.tridentsdk.server.world.TridentChunk;
-import net.tridentsdk.server.world.WorldUtils;
-import net.tridentsdk.world.ChunkLocation;
+import net.tridentsdk.server.world.TridentWorld;
 import net.tridentsdk.world.World;
 import net.tridentsdk.world.MassChange;
 
@@ -49,7 +44,7 @@ import java.util.*;
 public class DefaultMassChange implements MassChange {
     private final World world;
     private boolean committed = false;
-    private List<BlockChange> changes = new LinkedList<>();
+    private List<BlockChange> changes = new ArrayList<>();
 
     public DefaultMassChange(World world) {
         this.world = world;
@@ -116,41 +111,8 @@ public class DefaultMassChange implements MassChange {
             throw new IllegalArgumentException("Change has already been committed.");
         }
 
-        Map<ChunkLocation, List<BlockChange>> map = new HashMap<>();
-
-        for(BlockChange change : changes) {
-            ChunkLocation location = WorldUtils.chunkLocation(change.x(), change.z());
-            List<BlockChange> updatedChanges = map.get(location);
-
-            if(updatedChanges == null) {
-                updatedChanges = new ArrayList<>();
-            }
-
-            updatedChanges.add(change);
-            map.put(location, updatedChanges);
-        }
-
-        for(Map.Entry<ChunkLocation, List<BlockChange>> entry : map.entrySet()) {
-            List<BlockChange> changes = entry.getValue();
-            PacketPlayOutMultiBlockChange packet = new PacketPlayOutMultiBlockChange();
-            RecordBuilder[] records = new RecordBuilder[changes.size()];
-            TridentChunk chunk = (TridentChunk) world.chunkAt(entry.getKey(), false);
-
-            for (int i = 0; i < records.length; i++) {
-                BlockChange change = changes.get(i);
-
-                records[i] = new RecordBuilder().setBlockId(change.id())
-                        .setX((byte) change.x())
-                        .setY((byte) change.y())
-                        .setZ((byte) change.z())
-                        .setData(change.data());
-                chunk.setAt(change.x(), change.y(), change.z(), Substance.fromId(change.id()),
-                        change.data(), (byte) 255, (byte) 15);
-            }
-
-            packet.set("records", records).set("chunkLocation", entry.getKey());
-            TridentPlayer.sendAll(packet);
-        }
+        committed = true;
+        BulkChangeApplier.apply((TridentWorld) world, changes);
 
         return true;
     }
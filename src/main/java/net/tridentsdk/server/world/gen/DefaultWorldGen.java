@@ -18,15 +18,11 @@
 package net.tridentsdk.server.world.gen;
 
 import net.tridentsdk.base.Substance;
-import net.tridentsdk.concurrent.SelectableThreadPool;
-import net.tridentsdk.server.concurrent.ThreadsHandler;
 import net.tridentsdk.server.world.ChunkSection;
 import net.tridentsdk.server.world.WorldUtils;
-import net.tridentsdk.util.TridentLogger;
 import net.tridentsdk.world.ChunkLocation;
 import net.tridentsdk.world.gen.ChunkGenerator;
 
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
@@ -36,55 +32,48 @@ import java.util.concurrent.atomic.AtomicReferenceArray;
  */
 public class DefaultWorldGen extends ChunkGenerator {
     private final SimplexOctaveGenerator generator = new SimplexOctaveGenerator(12, 0.5, (int) seed);
-    private final SelectableThreadPool executor = ThreadsHandler.genExecutor();
 
     public DefaultWorldGen(long seed) {
         super(seed);
     }
 
+    /**
+     * Generates the blocks of a chunk on the calling thread
+     *
+     * <p>A chunk is a single unit of work, chunks are generated in parallel by generating several at once rather
+     * than by splitting one across threads.</p>
+     */
     @Override
-    public char[][] generateBlocks(final ChunkLocation location, AtomicReferenceArray<Integer> heights) {
-        final char[][] data = new char[16][ChunkSection.LENGTH];
-        final CountDownLatch release = new CountDownLatch(16);
+    public char[][] generateBlocks(ChunkLocation location, AtomicReferenceArray<Integer> heights) {
+        char[][] data = new char[16][ChunkSection.LENGTH];
+        int baseX = location.x() << 4;
+        int baseZ = location.z() << 4;
 
         for (int x = 0; x < 16; x++) {
-            final int finalX = x;
+            for (int z = 0; z < 16; z++) {
+                int i = WorldUtils.intScale(0, 140, generator.noise(x + baseX, z + baseZ)) - 20;
+                heights.set(WorldUtils.heightIndex(x, z), i);
 
-            executor.execute(() -> {
-                for (int z = 0; z < 16; z++) {
-                    final int i = WorldUtils.intScale(0, 140, generator.noise(finalX + (location.x() << 4), z + (location.z() << 4))) - 20;
-                    heights.set(WorldUtils.heightIndex(finalX, z), i);
+                if (i < 40) {
+                    for (int j = i; j <= 40; j++) {
+                        data[j / 16][WorldUtils.blockArrayIndex(x, j % 16, z)] = Substance.WATER.asExtended();
+                    }
+                }
 
+                for (int y = 0; y <= i; y++) {
                     if (i < 40) {
-                        for (int j = i; j <= 40; j++) {
-                            data[j / 16][WorldUtils.blockArrayIndex(finalX, j % 16, z)] = Substance.WATER.asExtended();
+                        if (y == i) {
+                            data[y / 16][WorldUtils.blockArrayIndex(x, y % 16, z)] = Substance.SAND.asExtended();
+                            continue;
                         }
                     }
 
-                    for (int y = 0; y <= i; y++) {
-                        if (i < 40) {
-                            if (y == i) {
-                                data[y / 16][WorldUtils.blockArrayIndex(finalX, y % 16, z)] = Substance.SAND.asExtended();
-                                continue;
-                            }
-                        }
-
-                        if (y == i) {
-                            data[y / 16][WorldUtils.blockArrayIndex(finalX, i % 16, z)] = Substance.GRASS.asExtended();
-                        } else
-                            data[y / 16][WorldUtils.blockArrayIndex(finalX, y % 16, z)] = Substance.DIRT.asExtended();
-                    }
+                    if (y == i) {
+                        data[y / 16][WorldUtils.blockArrayIndex(x, i % 16, z)] = Substance.GRASS.asExtended();
+                    } else
+                        data[y / 16][WorldUtils.blockArrayIndex(x, y % 16, z)] = Substance.DIRT.asExtended();
                 }
-
-                release.countDown();
-            });
-        }
-
-        try {
-            release.await();
-        } catch (InterruptedException e) {
-            TridentLogger.get().error(e);
-            return null;
+            }
         }
 
         return data;
@@ -0,0 +1,580 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world.light;
+
+import net.tridentsdk.base.Substance;
+import net.tridentsdk.server.chunk.CRefCounter;
+import net.tridentsdk.server.concurrent.ThreadsHandler;
+import net.tridentsdk.server.world.ChunkSection;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.server.world.TridentWorld;
+import net.tridentsdk.server.world.WorldUtils;
+import net.tridentsdk.util.NibbleArray;
+import net.tridentsdk.util.TridentLogger;
+import net.tridentsdk.world.ChunkLocation;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Computes the sky and block light of a world
+ *
+ * <p>Light is spread with breadth-first searches over queues of packed block positions. Darkening is done first,
+ * clearing the light that came from a changed block and collecting the brighter light around it, which is then
+ * spread back in. The searches cross section and chunk boundaries freely, but stop at chunks that are not loaded.</p>
+ *
+ * <p>Block changes and new chunks are queued, then processed in one batch per tick on the lighting executor. Only
+ * one batch runs at a time for each world, so the light arrays of a world are only ever written by one thread.</p>
+ *
+ * @author The TridentSDK Team
+ */
+@ThreadSafe
+public class LightEngine {
+    private static final byte[] OPACITY = new byte[4096];
+    private static final byte[] EMISSION = new byte[4096];
+
+    private static final int[] DX = { 0, 0, 1, -1, 0, 0 };
+    private static final int[] DY = { -1, 1, 0, 0, 0, 0 };
+    private static final int[] DZ = { 0, 0, 0, 0, 1, -1 };
+    private static final int DOWN = 0;
+
+    private static final int CACHE_SIZE = 64;
+    private static final long NO_CHUNK = Long.MIN_VALUE;
+
+    static {
+        Arrays.fill(OPACITY, (byte) 15);
+        OPACITY[0] = 0;
+        for (int id = 1; id < 256; id++) {
+            Substance substance = Substance.fromId((short) id);
+            if (substance != null && !substance.isSolid()) {
+                OPACITY[id] = 0;
+            }
+        }
+
+        // Solid blocks that let light through
+        for (int id : new int[] { 20, 85, 95, 101, 102, 107, 113, 160, 183, 184, 185, 186, 187, 188, 189, 190,
+                191, 192 }) {
+            OPACITY[id] = 0;
+        }
+        OPACITY[18] = 1; // leaves
+        OPACITY[161] = 1;
+        OPACITY[30] = 1; // cobweb
+        OPACITY[8] = 3; // water
+        OPACITY[9] = 3;
+        OPACITY[79] = 3; // ice
+        OPACITY[10] = 15; // lava
+        OPACITY[11] = 15;
+
+        EMISSION[10] = 15; // lava
+        EMISSION[11] = 15;
+        EMISSION[39] = 1; // brown mushroom
+        EMISSION[50] = 14; // torch
+        EMISSION[51] = 15; // fire
+        EMISSION[62] = 13; // lit furnace
+        EMISSION[74] = 9; // lit redstone ore
+        EMISSION[76] = 7; // redstone torch
+        EMISSION[89] = 15; // glowstone
+        EMISSION[90] = 11; // portal
+        EMISSION[91] = 15; // jack o'lantern
+        EMISSION[94] = 9; // powered repeater
+        EMISSION[117] = 1; // brewing stand
+        EMISSION[119] = 15; // end portal
+        EMISSION[120] = 1; // end portal frame
+        EMISSION[122] = 1; // dragon egg
+        EMISSION[124] = 15; // lit redstone lamp
+        EMISSION[130] = 7; // ender chest
+        EMISSION[138] = 15; // beacon
+        EMISSION[150] = 9; // powered comparator
+        EMISSION[169] = 15; // sea lantern
+    }
+
+    private final TridentWorld world;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @GuardedBy("this")
+    private LongQueue pendingChanges = new LongQueue();
+    @GuardedBy("this")
+    private ArrayDeque<TridentChunk> pendingChunks = new ArrayDeque<>();
+    @GuardedBy("this")
+    private ArrayDeque<Runnable> pendingCallbacks = new ArrayDeque<>();
+
+    // Only used by the batch that is currently running
+    private LongQueue changes = new LongQueue();
+    private ArrayDeque<TridentChunk> chunks = new ArrayDeque<>();
+    private ArrayDeque<Runnable> callbacks = new ArrayDeque<>();
+    private final LongQueue increase = new LongQueue(4096);
+    private final LongQueue decrease = new LongQueue(4096);
+    private final long[] cacheKeys = new long[CACHE_SIZE];
+    private final TridentChunk[] cacheChunks = new TridentChunk[CACHE_SIZE];
+
+    /**
+     * Creates a new light engine for the given world
+     *
+     * @param world the world to light
+     */
+    public LightEngine(TridentWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * The amount of light that the block with the given id blocks, from 0 to 15
+     *
+     * @param id the block id
+     * @return the light opacity
+     */
+    public static int opacity(int id) {
+        return OPACITY[id & 0xFFF];
+    }
+
+    /**
+     * The amount of light that the block with the given id gives off, from 0 to 15
+     *
+     * @param id the block id
+     * @return the light emission
+     */
+    public static int emission(int id) {
+        return EMISSION[id & 0xFFF];
+    }
+
+    /**
+     * Queues a block to be relit on the next tick after it has changed
+     *
+     * @param x the world x coordinate
+     * @param y the y coordinate
+     * @param z the world z coordinate
+     */
+    public void blockChanged(int x, int y, int z) {
+        long packed = pack(x, y, z, 0);
+        synchronized (this) {
+            pendingChanges.add(packed);
+        }
+    }
+
+    /**
+     * Queues a newly generated chunk to be lit from scratch on the next tick
+     *
+     * @param chunk the chunk to light
+     */
+    public void lightChunk(TridentChunk chunk) {
+        synchronized (this) {
+            pendingChunks.add(chunk);
+        }
+    }
+
+    /**
+     * Runs the given task on the lighting executor once everything queued so far has been lit
+     *
+     * @param task the task to run after the batch
+     */
+    public void afterNextBatch(Runnable task) {
+        synchronized (this) {
+            pendingCallbacks.add(task);
+        }
+    }
+
+    /**
+     * Starts processing the light updates queued since the last batch, unless a batch is still running
+     */
+    public void tick() {
+        synchronized (this) {
+            if (pendingChanges.isEmpty() && pendingChunks.isEmpty() && pendingCallbacks.isEmpty()) {
+                return;
+            }
+        }
+
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        ThreadsHandler.lightExecutor().execute(() -> {
+            try {
+                runBatch();
+            } catch (Exception e) {
+                TridentLogger.get().error(e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void runBatch() {
+        synchronized (this) {
+            LongQueue changes = this.changes;
+            this.changes = pendingChanges;
+            pendingChanges = changes;
+
+            ArrayDeque<TridentChunk> chunks = this.chunks;
+            this.chunks = pendingChunks;
+            pendingChunks = chunks;
+
+            ArrayDeque<Runnable> callbacks = this.callbacks;
+            this.callbacks = pendingCallbacks;
+            pendingCallbacks = callbacks;
+        }
+
+        Arrays.fill(cacheKeys, NO_CHUNK);
+        Arrays.fill(cacheChunks, null);
+
+        while (!chunks.isEmpty()) {
+            initialize(chunks.poll());
+        }
+
+        while (!changes.isEmpty()) {
+            long packed = changes.poll();
+            int x = unpackX(packed);
+            int y = unpackY(packed);
+            int z = unpackZ(packed);
+
+            relight(true, x, y, z);
+            relight(false, x, y, z);
+        }
+
+        // Don't keep chunks reachable after the batch
+        Arrays.fill(cacheChunks, null);
+
+        while (!callbacks.isEmpty()) {
+            try {
+                callbacks.poll().run();
+            } catch (Exception e) {
+                TridentLogger.get().error(e);
+            }
+        }
+    }
+
+    private void initialize(TridentChunk chunk) {
+        int baseX = chunk.x() << 4;
+        int baseZ = chunk.z() << 4;
+        int slot = (chunk.x() * 31 + chunk.z()) & (CACHE_SIZE - 1);
+        cacheKeys[slot] = ((long) chunk.x() << 32) | (chunk.z() & 0xFFFFFFFFL);
+        cacheChunks[slot] = chunk;
+
+        // Sky light falls straight down until it hits something, the lowest fully lit y of each column is kept
+        int[] top = new int[256];
+        int highest = 0;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int level = 15;
+                int column = 256;
+                for (int y = 255; y >= 0; y--) {
+                    ChunkSection section = chunk.sections.get(y >> 4);
+                    byte[] sky = section.skyLight;
+                    if (sky == null) {
+                        // Empty sections store nothing while the sky reaches all of them
+                        if (level == 15) {
+                            column = y & ~15;
+                            y &= ~15;
+                            continue;
+                        }
+
+                        sky = section.writableLight(true);
+                    }
+
+                    int index = WorldUtils.blockArrayIndex(x, y & 15, z);
+                    int opacity = OPACITY[section.typeAt(index) >> 4];
+                    if (level != 15 || opacity != 0) {
+                        level = Math.max(0, level - Math.max(1, opacity));
+                    }
+
+                    NibbleArray.set(sky, index, (byte) level);
+                    if (level == 15) {
+                        column = y;
+                    }
+                }
+
+                top[x << 4 | z] = column;
+                highest = Math.max(highest, column);
+            }
+        }
+
+        // Fully lit blocks next to darker columns spread their light sideways
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int column = top[x << 4 | z];
+                for (int face = 2; face < 6; face++) {
+                    int nx = x + DX[face];
+                    int nz = z + DZ[face];
+                    boolean inside = nx >= 0 && nx < 16 && nz >= 0 && nz < 16;
+                    int neighbor = inside ? top[nx << 4 | nz] : highest;
+                    for (int y = column; y < neighbor && y < 256; y++) {
+                        increase.add(pack(baseX + x, y, baseZ + z, 15));
+                    }
+                }
+            }
+        }
+
+        // Light coming in from the chunks around this one
+        for (int i = 0; i < 16; i++) {
+            for (int y = 0; y < 256; y++) {
+                seed(baseX - 1, y, baseZ + i);
+                seed(baseX + 16, y, baseZ + i);
+                seed(baseX + i, y, baseZ - 1);
+                seed(baseX + i, y, baseZ + 16);
+            }
+        }
+
+        spread(true);
+
+        for (int i = 0; i < 16; i++) {
+            ChunkSection section = chunk.sections.get(i);
+            byte[] blockLight = section.writableLight(false);
+            if (blockLight == null) {
+                continue;
+            }
+
+            for (int index = 0; index < ChunkSection.LENGTH; index++) {
+                int emission = EMISSION[section.typeAt(index) >> 4];
+                if (emission > 0) {
+                    NibbleArray.set(blockLight, index, (byte) emission);
+                    increase.add(pack(baseX + (index & 15), (i << 4) + (index >> 8), baseZ + ((index >> 4) & 15),
+                            emission));
+                }
+            }
+        }
+
+        for (int i = 0; i < 16; i++) {
+            for (int y = 0; y < 256; y++) {
+                seedBlock(baseX - 1, y, baseZ + i);
+                seedBlock(baseX + 16, y, baseZ + i);
+                seedBlock(baseX + i, y, baseZ - 1);
+                seedBlock(baseX + i, y, baseZ + 16);
+            }
+        }
+
+        spread(false);
+    }
+
+    private void seed(int x, int y, int z) {
+        int level = light(true, x, y, z);
+        if (level > 1) {
+            increase.add(pack(x, y, z, level));
+        }
+    }
+
+    private void seedBlock(int x, int y, int z) {
+        int level = light(false, x, y, z);
+        if (level > 1) {
+            increase.add(pack(x, y, z, level));
+        }
+    }
+
+    private void relight(boolean sky, int x, int y, int z) {
+        int old = light(sky, x, y, z);
+        int own;
+        if (sky) {
+            // The top of the world is lit by the sky directly above it
+            int opacity = opacity(x, y, z);
+            own = y == 255 ? (opacity == 0 ? 15 : Math.max(0, 15 - opacity)) : 0;
+        } else {
+            own = EMISSION[type(x, y, z) >> 4];
+        }
+
+        if (!setLight(sky, x, y, z, own)) {
+            return;
+        }
+
+        if (old > own) {
+            decrease.add(pack(x, y, z, old));
+            darken(sky);
+        }
+
+        if (own > 0) {
+            increase.add(pack(x, y, z, own));
+        }
+
+        // Pull the light from around the block back in, it may let more through than before
+        for (int face = 0; face < 6; face++) {
+            int ny = y + DY[face];
+            if (ny < 0 || ny > 255) {
+                continue;
+            }
+
+            int nx = x + DX[face];
+            int nz = z + DZ[face];
+            int level = light(sky, nx, ny, nz);
+            if (level > 1) {
+                increase.add(pack(nx, ny, nz, level));
+            }
+        }
+
+        spread(sky);
+    }
+
+    private void darken(boolean sky) {
+        while (!decrease.isEmpty()) {
+            long packed = decrease.poll();
+            int x = unpackX(packed);
+            int y = unpackY(packed);
+            int z = unpackZ(packed);
+            int level = unpackLevel(packed);
+
+            for (int face = 0; face < 6; face++) {
+                int ny = y + DY[face];
+                if (ny < 0 || ny > 255) {
+                    continue;
+                }
+
+                int nx = x + DX[face];
+                int nz = z + DZ[face];
+                int current = light(sky, nx, ny, nz);
+                if (current == 0) {
+                    continue;
+                }
+
+                // Sky light going straight down does not weaken, so it came from here even though it is as bright
+                if (current < level || (sky && face == DOWN && level == 15 && current == 15)) {
+                    if (setLight(sky, nx, ny, nz, 0)) {
+                        decrease.add(pack(nx, ny, nz, current));
+
+                        if (!sky) {
+                            int emission = EMISSION[type(nx, ny, nz) >> 4];
+                            if (emission > 0 && setLight(false, nx, ny, nz, emission)) {
+                                increase.add(pack(nx, ny, nz, emission));
+                            }
+                        }
+                    }
+                } else {
+                    // Lit by something else, which will need to fill the darkened area back in
+                    increase.add(pack(nx, ny, nz, current));
+                }
+            }
+        }
+    }
+
+    private void spread(boolean sky) {
+        while (!increase.isEmpty()) {
+            long packed = increase.poll();
+            int x = unpackX(packed);
+            int y = unpackY(packed);
+            int z = unpackZ(packed);
+            int level = unpackLevel(packed);
+
+            // Changed since it was queued
+            if (light(sky, x, y, z) != level) {
+                continue;
+            }
+
+            for (int face = 0; face < 6; face++) {
+                int ny = y + DY[face];
+                if (ny < 0 || ny > 255) {
+                    continue;
+                }
+
+                int nx = x + DX[face];
+                int nz = z + DZ[face];
+                int opacity = opacity(nx, ny, nz);
+                int next;
+                if (sky && face == DOWN && level == 15 && opacity == 0) {
+                    next = 15;
+                } else {
+                    next = level - Math.max(1, opacity);
+                }
+
+                if (next > 0 && next > light(sky, nx, ny, nz) && setLight(sky, nx, ny, nz, next)) {
+                    increase.add(pack(nx, ny, nz, next));
+                }
+            }
+        }
+    }
+
+    private TridentChunk chunk(int chunkX, int chunkZ) {
+        long key = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        int slot = (chunkX * 31 + chunkZ) & (CACHE_SIZE - 1);
+        if (cacheKeys[slot] == key) {
+            return cacheChunks[slot];
+        }
+
+        // Only chunks that are already loaded are lit, light stops at the edge of the loaded area
+        CRefCounter counter = world.chunkHandler().get(ChunkLocation.create(chunkX, chunkZ));
+        TridentChunk chunk = counter == null ? null : counter.unwrap();
+        cacheKeys[slot] = key;
+        cacheChunks[slot] = chunk;
+        return chunk;
+    }
+
+    private int type(int x, int y, int z) {
+        TridentChunk chunk = chunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return 0;
+        }
+
+        return chunk.sections.get(y >> 4).typeAt(WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15));
+    }
+
+    private int opacity(int x, int y, int z) {
+        TridentChunk chunk = chunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return 15;
+        }
+
+        return OPACITY[chunk.sections.get(y >> 4).typeAt(WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15)) >> 4];
+    }
+
+    private int light(boolean sky, int x, int y, int z) {
+        TridentChunk chunk = chunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return 0;
+        }
+
+        ChunkSection section = chunk.sections.get(y >> 4);
+        byte[] array = sky ? section.skyLight : section.blockLight;
+        if (array == null) {
+            // Sections only go without light while it is the sky's, or none
+            return sky ? 15 : 0;
+        }
+
+        return NibbleArray.get(array, WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15)) & 0xF;
+    }
+
+    private boolean setLight(boolean sky, int x, int y, int z, int level) {
+        TridentChunk chunk = chunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return false;
+        }
+
+        // Empty sections get light arrays once they hold light of their own
+        ChunkSection section = chunk.sections.get(y >> 4);
+        byte[] array = section.writableLight(sky);
+        NibbleArray.set(array, WorldUtils.blockArrayIndex(x & 15, y & 15, z & 15), (byte) level);
+        section.markDirty();
+        return true;
+    }
+
+    // x and z take 26 bits each, y takes 8 and the light level 4
+    private static long pack(int x, int y, int z, int level) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | ((y & 0xFF) << 4) | (level & 0xF);
+    }
+
+    private static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    private static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    private static int unpackY(long packed) {
+        return (int) (packed >>> 4) & 0xFF;
+    }
+
+    private static int unpackLevel(long packed) {
+        return (int) packed & 0xF;
+    }
+}
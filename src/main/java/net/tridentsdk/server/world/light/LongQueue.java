@@ -0,0 +1,123 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.world.light;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * A growable ring buffer of primitive longs, used to queue packed block positions without boxing
+ *
+ * @author The TridentSDK Team
+ */
+@NotThreadSafe
+public final class LongQueue {
+    private long[] elements;
+    private int head;
+    private int tail;
+
+    /**
+     * Creates a new queue with a small initial capacity
+     */
+    public LongQueue() {
+        this(256);
+    }
+
+    /**
+     * Creates a new queue that can hold the given amount of elements before growing
+     *
+     * @param capacity the initial capacity, rounded up to a power of two
+     */
+    public LongQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.elements = new long[size];
+    }
+
+    /**
+     * Adds an element to the end of the queue
+     *
+     * @param value the element to add
+     */
+    public void add(long value) {
+        elements[tail] = value;
+        tail = (tail + 1) & (elements.length - 1);
+        if (tail == head) {
+            grow();
+        }
+    }
+
+    /**
+     * Adds all of the elements in the given queue, leaving the given queue unchanged
+     *
+     * @param queue the queue to copy elements from
+     */
+    public void addAll(LongQueue queue) {
+        int mask = queue.elements.length - 1;
+        for (int i = queue.head; i != queue.tail; i = (i + 1) & mask) {
+            add(queue.elements[i]);
+        }
+    }
+
+    /**
+     * Removes and returns the element at the head of the queue
+     *
+     * <p>The queue must not be empty.</p>
+     *
+     * @return the element that was removed
+     */
+    public long poll() {
+        long value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        return value;
+    }
+
+    /**
+     * Whether or not the queue has no elements
+     *
+     * @return {@code true} if empty
+     */
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * The amount of elements in the queue
+     *
+     * @return the size of the queue
+     */
+    public int size() {
+        return (tail - head) & (elements.length - 1);
+    }
+
+    /**
+     * Removes all of the elements in the queue
+     */
+    public void clear() {
+        head = 0;
+        tail = 0;
+    }
+
+    private void grow() {
+        int length = elements.length;
+        long[] grown = Arrays.copyOf(elements, length << 1);
+        // Elements from the head to the end of the old array are moved to the end of the new one
+        System.arraycopy(elements, head, grown, head + length, length - head);
+        elements = grown;
+        head += length;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import net.tridentsdk.meta.nbt.*;
+import net.tridentsdk.server.world.AnvilChunkDecoder;
+import net.tridentsdk.server.world.ChunkSection;
+import net.tridentsdk.server.world.TridentChunk;
+import net.tridentsdk.world.ChunkLocation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading a saved chunk by decoding the tag tree and loading the chunk from it, with reading the sections
+ * straight from the encoding as region files do
+ *
+ * <p>The setup checks that both give the same blocks and light before anything is measured.</p>
+ */
+@State(Scope.Thread)
+public class ChunkDecodeTest {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + ChunkDecodeTest.class.getSimpleName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .warmupIterations(10)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.milliseconds(200))
+                .threads(1)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // The amount of sections saved in the chunk, the rest are air
+    @Param({ "4", "8", "16" })
+    private int sections;
+
+    // Tile entities in the chunk, which are skipped by the streaming decoder
+    @Param({ "0", "32" })
+    private int tiles;
+
+    private static final ChunkLocation LOCATION = ChunkLocation.create(0, 0);
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+
+        CompoundTag root = new CompoundTag("root");
+        CompoundTag level = new CompoundTag("Level");
+        level.addTag(new LongTag("LastUpdate").setValue(1000L));
+        level.addTag(new ByteTag("LightPopulated").setValue((byte) 1));
+        level.addTag(new ByteTag("TerrainPopulated").setValue((byte) 1));
+        level.addTag(new LongTag("InhabitedTime").setValue(0L));
+
+        int[] heights = new int[256];
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = sections * 16;
+        }
+        level.addTag(new IntArrayTag("HeightMap").setValue(heights));
+
+        ListTag sectionTags = new ListTag("Sections", TagType.COMPOUND);
+        for (int y = 0; y < sections; y++) {
+            ChunkSection section = new ChunkSection((byte) y);
+            for (int i = 0; i < ChunkSection.LENGTH; i++) {
+                // Some ids above 255, which need the add nibbles
+                int id = random.nextInt(64) == 0 ? 256 + random.nextInt(256) : 1 + random.nextInt(16);
+                section.setType(i, (char) (id << 4 | random.nextInt(16)));
+            }
+            random.nextBytes(section.blockLight);
+            random.nextBytes(section.skyLight);
+            sectionTags.addTag(section.snapshot().asNbt());
+        }
+        level.addTag(sectionTags);
+
+        level.addTag(new ListTag("Entities", TagType.COMPOUND));
+        ListTag tileTags = new ListTag("TileEntities", TagType.COMPOUND);
+        for (int i = 0; i < tiles; i++) {
+            CompoundTag tile = new CompoundTag("");
+            tile.addTag(new IntTag("x").setValue(random.nextInt(16)));
+            tile.addTag(new IntTag("y").setValue(random.nextInt(256)));
+            tile.addTag(new IntTag("z").setValue(random.nextInt(16)));
+            tileTags.addTag(tile);
+        }
+        level.addTag(tileTags);
+
+        root.addTag(level);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new NBTEncoder(new DataOutputStream(out)).encode(root);
+        } catch (NBTException e) {
+            throw new IOException(e);
+        }
+        encoded = out.toByteArray();
+
+        verify();
+    }
+
+    // Both paths must load the same chunk, or there is nothing to compare
+    private void verify() throws IOException {
+        TridentChunk chunk;
+        try {
+            chunk = tree();
+        } catch (NBTException e) {
+            throw new IOException(e);
+        }
+        ChunkSection[] decoded = streaming();
+
+        for (int y = 0; y < 16; y++) {
+            ChunkSection expected = chunk.sections.get(y);
+            ChunkSection actual = decoded[y] == null ? new ChunkSection((byte) y) : decoded[y];
+            check(y, "types", Arrays.equals(expected.types, actual.types));
+            check(y, "data", Arrays.equals(expected.data, actual.data));
+            check(y, "block light", Arrays.equals(expected.blockLight, actual.blockLight));
+            check(y, "sky light", Arrays.equals(expected.skyLight, actual.skyLight));
+        }
+    }
+
+    private static void check(int y, String what, boolean equal) {
+        if (!equal) {
+            throw new IllegalStateException("The streaming decoder loaded different " + what + " in section " + y);
+        }
+    }
+
+    private DataInputStream input() {
+        return new DataInputStream(new ByteArrayInputStream(encoded));
+    }
+
+    @Benchmark
+    public TridentChunk tree() throws NBTException {
+        // The chunk only needs a world to be used, not to be loaded
+        TridentChunk chunk = new TridentChunk(null, LOCATION) {
+        };
+        chunk.load(new NBTDecoder(input()).decode());
+        return chunk;
+    }
+
+    @Benchmark
+    public ChunkSection[] streaming() throws IOException {
+        return AnvilChunkDecoder.decode(input()).sections();
+    }
+}
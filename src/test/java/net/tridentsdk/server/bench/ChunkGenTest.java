@@ -0,0 +1,155 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import net.tridentsdk.base.Substance;
+import net.tridentsdk.server.world.ChunkSection;
+import net.tridentsdk.server.world.WorldUtils;
+import net.tridentsdk.server.world.gen.DefaultWorldGen;
+import net.tridentsdk.server.world.gen.SimplexOctaveGenerator;
+import net.tridentsdk.world.ChunkLocation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Measures how many chunks of terrain the default generator produces per second, per core
+ *
+ * <p>Each benchmark thread generates its own chunks, one chunk per call, which is how chunks are generated in
+ * parallel. The column fan-out the generator used to do, 16 tasks per chunk joined with a latch, is kept as the
+ * baseline.</p>
+ */
+@State(Scope.Benchmark)
+public class ChunkGenTest {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] { 1, CORES }) {
+            Options opt = new OptionsBuilder()
+                    .include(".*" + ChunkGenTest.class.getSimpleName() + ".*")
+                    .mode(Mode.Throughput)
+                    .timeUnit(TimeUnit.SECONDS)
+                    .warmupIterations(5)
+                    .warmupTime(TimeValue.milliseconds(500))
+                    .measurementIterations(10)
+                    .measurementTime(TimeValue.milliseconds(500))
+                    .threads(threads)
+                    .forks(1)
+                    .build();
+
+            for (RunResult result : new Runner(opt).run()) {
+                System.out.println(result.getParams().getBenchmark() + " with " + threads + " threads: "
+                        + String.format("%.1f", result.getPrimaryResult().getScore() / threads)
+                        + " chunks/s per core");
+            }
+        }
+    }
+
+    private DefaultWorldGen generator;
+    private ColumnFanOutGen fanOut;
+
+    @Setup
+    public void setup() {
+        generator = new DefaultWorldGen(42);
+        fanOut = new ColumnFanOutGen(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fanOut.executor.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Chunks {
+        private final AtomicReferenceArray<Integer> heights = new AtomicReferenceArray<>(256);
+        private int next;
+
+        // Every call generates a chunk that hasn't been generated before
+        ChunkLocation next() {
+            int index = next++;
+            return ChunkLocation.create((int) Thread.currentThread().getId() * 4096 + (index & 4095), index >> 12);
+        }
+    }
+
+    @Benchmark
+    public char[][] chunkPerTask(Chunks chunks) {
+        return generator.generateBlocks(chunks.next(), chunks.heights);
+    }
+
+    @Benchmark
+    public char[][] columnFanOut(Chunks chunks) throws InterruptedException {
+        return fanOut.generateBlocks(chunks.next(), chunks.heights);
+    }
+
+    /**
+     * The terrain of the default generator, each column of the chunk generated as a task on a shared pool
+     */
+    private static class ColumnFanOutGen {
+        private final SimplexOctaveGenerator generator;
+        private final ExecutorService executor = Executors.newFixedThreadPool(CORES);
+
+        ColumnFanOutGen(long seed) {
+            generator = new SimplexOctaveGenerator(12, 0.5, (int) seed);
+        }
+
+        char[][] generateBlocks(ChunkLocation location, AtomicReferenceArray<Integer> heights)
+                throws InterruptedException {
+            char[][] data = new char[16][ChunkSection.LENGTH];
+            CountDownLatch release = new CountDownLatch(16);
+
+            for (int x = 0; x < 16; x++) {
+                int finalX = x;
+                executor.execute(() -> {
+                    for (int z = 0; z < 16; z++) {
+                        int i = WorldUtils.intScale(0, 140,
+                                generator.noise(finalX + (location.x() << 4), z + (location.z() << 4))) - 20;
+                        heights.set(WorldUtils.heightIndex(finalX, z), i);
+
+                        if (i < 40) {
+                            for (int j = i; j <= 40; j++) {
+                                data[j / 16][WorldUtils.blockArrayIndex(finalX, j % 16, z)] =
+                                        Substance.WATER.asExtended();
+                            }
+                        }
+
+                        for (int y = 0; y <= i; y++) {
+                            char type = y < i ? Substance.DIRT.asExtended() :
+                                    i < 40 ? Substance.SAND.asExtended() : Substance.GRASS.asExtended();
+                            data[y / 16][WorldUtils.blockArrayIndex(finalX, y % 16, z)] = type;
+                        }
+                    }
+
+                    release.countDown();
+                });
+            }
+
+            release.await();
+            return data;
+        }
+    }
+}
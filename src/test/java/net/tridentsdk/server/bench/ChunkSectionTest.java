@@ -0,0 +1,101 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tridentsdk.server.bench;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.tridentsdk.server.world.NewChunkSection;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a packet chunk section block by block, and encoding it to a buffer
+ */
+@State(Scope.Thread)
+public class ChunkSectionTest {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + ChunkSectionTest.class.getSimpleName() + ".*")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupIterations(10)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.milliseconds(200))
+                .threads(1)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // 1 = all air, 16 = typical terrain, 256 = full local palette, 4096 = global palette
+    @Param({ "1", "16", "256", "4096" })
+    private int distinct;
+
+    private final int[] types = new int[NewChunkSection.SIZE];
+    private final int[] data = new int[NewChunkSection.SIZE];
+    private NewChunkSection built;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < NewChunkSection.SIZE; i++) {
+            int state = distinct == 1 ? 0 : random.nextInt(distinct);
+            types[i] = state >> 4;
+            data[i] = state & 0xF;
+        }
+
+        built = build();
+        buf = Unpooled.buffer(16384);
+    }
+
+    @TearDown
+    public void teardown() {
+        buf.release();
+    }
+
+    @Benchmark
+    public NewChunkSection build() {
+        NewChunkSection section = new NewChunkSection();
+        for (int i = 0; i < NewChunkSection.SIZE; i++) {
+            section.setBlock(i, types[i], data[i]);
+        }
+
+        return section;
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        buf.clear();
+        built.writeBlocks(buf);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public int expectedSize() {
+        return built.getExpectedSize();
+    }
+}
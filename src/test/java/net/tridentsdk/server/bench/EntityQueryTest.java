@@ -0,0 +1,194 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import net.tridentsdk.base.BoundingBox;
+import net.tridentsdk.base.Position;
+import net.tridentsdk.entity.Entity;
+import net.tridentsdk.entity.traits.EntityProperties;
+import net.tridentsdk.entity.types.EntityType;
+import net.tridentsdk.server.world.ChunkEntityIndex;
+import net.tridentsdk.util.Vector;
+import net.tridentsdk.world.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares finding the entities around a point by scanning every entity with looking through the per-section
+ * entity buckets of the chunks around it
+ */
+@State(Scope.Benchmark)
+public class EntityQueryTest {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + EntityQueryTest.class.getSimpleName() + ".*")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupIterations(10)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.milliseconds(200))
+                .threads(1)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // Entities are spread over a square of CHUNKS x CHUNKS chunks
+    private static final int CHUNKS = 32;
+
+    @Param({ "10000" })
+    private int count;
+
+    @Param({ "2", "16" })
+    private double radius;
+
+    private final Set<Entity> all = new HashSet<>();
+    private final Map<Long, ChunkEntityIndex> chunks = new HashMap<>();
+    private Position[] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble() * CHUNKS * 16;
+            double y = 60 + random.nextDouble() * 20;
+            double z = random.nextDouble() * CHUNKS * 16;
+            FakeEntity entity = new FakeEntity(new Position(null, x, y, z));
+
+            all.add(entity);
+            chunks.computeIfAbsent(key((int) x >> 4, (int) z >> 4), k -> new ChunkEntityIndex()).add(entity, y);
+        }
+
+        queries = new Position[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = new Position(null, random.nextDouble() * CHUNKS * 16, 70, random.nextDouble() * CHUNKS * 16);
+        }
+    }
+
+    private static long key(int x, int z) {
+        return (long) x << 32 | z & 0xFFFFFFFFL;
+    }
+
+    private Position nextQuery() {
+        return queries[next++ & (queries.length - 1)];
+    }
+
+    @Benchmark
+    public Set<Entity> scanRange() {
+        Position center = nextQuery();
+        double squared = radius * radius;
+        return all.stream()
+                .filter(e -> e.position().distanceSquared(center) <= squared)
+                .collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public Set<Entity> indexedRange() {
+        Position center = nextQuery();
+        Set<Entity> found = new HashSet<>();
+        for (int cx = (int) Math.floor(center.x() - radius) >> 4; cx <= (int) Math.floor(center.x() + radius) >> 4; cx++) {
+            for (int cz = (int) Math.floor(center.z() - radius) >> 4; cz <= (int) Math.floor(center.z() + radius) >> 4; cz++) {
+                ChunkEntityIndex index = chunks.get(key(cx, cz));
+                if (index != null) {
+                    index.collectInRange(center.x(), center.y(), center.z(), radius, null, found);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    @Benchmark
+    public List<Entity> scanBox() {
+        BoundingBox box = box(nextQuery());
+        return all.stream()
+                .filter(e -> e.boundingBox().collidesWith(box))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Entity> indexedBox() {
+        BoundingBox box = box(nextQuery());
+        List<Entity> found = new ArrayList<>();
+        int minX = (int) Math.floor((box.minX() - ChunkEntityIndex.MARGIN) / 16.0D);
+        int maxX = (int) Math.floor((box.maxX() + ChunkEntityIndex.MARGIN) / 16.0D);
+        int minZ = (int) Math.floor((box.minZ() - ChunkEntityIndex.MARGIN) / 16.0D);
+        int maxZ = (int) Math.floor((box.maxZ() + ChunkEntityIndex.MARGIN) / 16.0D);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                ChunkEntityIndex index = chunks.get(key(cx, cz));
+                if (index != null) {
+                    index.collect(null, box, null, found);
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private BoundingBox box(Position center) {
+        return new BoundingBox(center.x() - radius, center.y() - radius, center.z() - radius,
+                center.x() + radius, center.y() + radius, center.z() + radius);
+    }
+
+    private static final class FakeEntity implements Entity {
+        private final Position position;
+        private final BoundingBox box;
+
+        FakeEntity(Position position) {
+            this.position = position;
+            this.box = new BoundingBox(position.x() - 0.3, position.y(), position.z() - 0.3,
+                    position.x() + 0.3, position.y() + 1.8, position.z() + 0.3);
+        }
+
+        @Override public void teleport(double x, double y, double z) {}
+        @Override public void teleport(Entity entity) {}
+        @Override public void teleport(Position location) {}
+        @Override public World world() {return null;}
+        @Override public Position position() {return position;}
+        @Override public Vector velocity() {return null;}
+        @Override public void setVelocity(Vector vector) {}
+        @Override public boolean onGround() {return false;}
+        @Override public Set<Entity> withinRange(double radius) {return null;}
+        @Override public String displayName() {return null;}
+        @Override public void setDisplayName(String name) {}
+        @Override public boolean isNameVisible() {return false;}
+        @Override public boolean isSilent() {return false;}
+        @Override public int entityId() {return 0;}
+        @Override public UUID uniqueId() {return null;}
+        @Override public void remove() {}
+        @Override public Entity passenger() {return null;}
+        @Override public void setPassenger(Entity entity) {}
+        @Override public void eject() {}
+        @Override public EntityType type() {return null;}
+        @Override public void applyProperties(EntityProperties properties) {}
+        @Override public void setSize(float width, float height) {}
+        @Override public BoundingBox boundingBox() {return box;}
+    }
+}
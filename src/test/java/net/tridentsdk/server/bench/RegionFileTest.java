@@ -0,0 +1,246 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import net.tridentsdk.server.world.RegionFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compares the channel backed region file, which locks per chunk slot, with the previous implementation which
+ * seeks a single RandomAccessFile while holding the lock on the whole region
+ */
+@State(Scope.Benchmark)
+public class RegionFileTest {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + RegionFileTest.class.getSimpleName() + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .warmupIterations(10)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.milliseconds(200))
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // Roughly the size of a saved chunk before compression
+    @Param({ "16384" })
+    private int chunkBytes;
+
+    private File directory;
+    private RegionFile region;
+    private LegacyRegionFile legacy;
+    private byte[] chunk;
+    private byte[] compressed;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = RegionFixture.createDirectory("region-bench");
+        region = new RegionFile(new File(directory, "r.0.0.mca"));
+        legacy = new LegacyRegionFile(new File(directory, "r.0.0.legacy.mca"));
+        chunk = RegionFixture.chunk(chunkBytes);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(chunk);
+        }
+        compressed = out.toByteArray();
+
+        for (int x = 0; x < 32; x++) {
+            for (int z = 0; z < 32; z++) {
+                writeNew(x, z);
+                legacy.write(x, z, compressed, compressed.length);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        region.close();
+        legacy.close();
+        RegionFixture.delete(directory);
+    }
+
+    private void writeNew(int x, int z) throws IOException {
+        try (DataOutputStream out = region.getChunkDataOutputStream(x, z)) {
+            out.write(chunk);
+        }
+    }
+
+    private static int drain(DataInputStream in) throws IOException {
+        byte[] buf = new byte[4096];
+        int total = 0;
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            total += read;
+        }
+
+        return total;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int readLegacy() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return drain(legacy.read(random.nextInt(32), random.nextInt(32)));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int readChannel() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return drain(region.getChunkDataInputStream(random.nextInt(32), random.nextInt(32)));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writeLegacy() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8096);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(chunk);
+        }
+        legacy.write(random.nextInt(32), random.nextInt(32), out.toByteArray(), out.size());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writeChannel() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        writeNew(random.nextInt(32), random.nextInt(32));
+    }
+
+    /**
+     * The region file I/O as it was before it moved to a FileChannel
+     */
+    private static final class LegacyRegionFile {
+        private static final int SECTOR_BYTES = 4096;
+        private static final int SECTOR_INTS = SECTOR_BYTES / 4;
+        private static final byte[] emptySector = new byte[SECTOR_BYTES];
+
+        private final RandomAccessFile file;
+        private final int[] offsets = new int[SECTOR_INTS];
+        private final ArrayList<Boolean> sectorFree = new ArrayList<>();
+
+        LegacyRegionFile(File path) throws IOException {
+            file = new RandomAccessFile(path, "rw");
+            for (int i = 0; i < SECTOR_INTS * 2; ++i) {
+                file.writeInt(0);
+            }
+
+            sectorFree.add(false);
+            sectorFree.add(false);
+        }
+
+        synchronized DataInputStream read(int x, int z) throws IOException {
+            int offset = offsets[x + z * 32];
+            int sectorNumber = offset >> 8;
+
+            file.seek(sectorNumber * SECTOR_BYTES);
+            int length = file.readInt();
+            file.readByte();
+            byte[] data = new byte[length - 1];
+            file.read(data);
+            return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+        }
+
+        synchronized void write(int x, int z, byte[] data, int length) throws IOException {
+            int offset = offsets[x + z * 32];
+            int sectorNumber = offset >> 8;
+            int sectorsAllocated = offset & 0xFF;
+            int sectorsNeeded = (length + 5) / SECTOR_BYTES + 1;
+
+            if (sectorNumber != 0 && sectorsAllocated == sectorsNeeded) {
+                write(sectorNumber, data, length);
+            } else {
+                for (int i = 0; i < sectorsAllocated; ++i) {
+                    sectorFree.set(sectorNumber + i, true);
+                }
+
+                int runStart = sectorFree.indexOf(true);
+                int runLength = 0;
+                if (runStart != -1) {
+                    for (int i = runStart; i < sectorFree.size(); ++i) {
+                        if (runLength != 0) {
+                            if (sectorFree.get(i)) runLength++;
+                            else runLength = 0;
+                        } else if (sectorFree.get(i)) {
+                            runStart = i;
+                            runLength = 1;
+                        }
+                        if (runLength >= sectorsNeeded) {
+                            break;
+                        }
+                    }
+                }
+
+                if (runLength >= sectorsNeeded) {
+                    sectorNumber = runStart;
+                    for (int i = 0; i < sectorsNeeded; ++i) {
+                        sectorFree.set(sectorNumber + i, false);
+                    }
+                } else {
+                    file.seek(file.length());
+                    sectorNumber = sectorFree.size();
+                    for (int i = 0; i < sectorsNeeded; ++i) {
+                        file.write(emptySector);
+                        sectorFree.add(false);
+                    }
+                }
+
+                write(sectorNumber, data, length);
+                setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
+            }
+
+            file.seek(SECTOR_BYTES + (x + z * 32) * 4);
+            file.writeInt((int) (System.currentTimeMillis() / 1000L));
+        }
+
+        private void write(int sectorNumber, byte[] data, int length) throws IOException {
+            file.seek(sectorNumber * SECTOR_BYTES);
+            file.writeInt(length + 1);
+            file.writeByte(2);
+            file.write(data, 0, length);
+        }
+
+        private void setOffset(int x, int z, int offset) throws IOException {
+            offsets[x + z * 32] = offset;
+            file.seek((x + z * 32) * 4);
+            file.writeInt(offset);
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * The temporary directory and chunk contents shared by the region file benchmarks
+ */
+final class RegionFixture {
+    private RegionFixture() {
+    }
+
+    static File createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    // Repetitive enough to compress like terrain does
+    static byte[] chunk(int bytes) {
+        Random random = new Random(42);
+        byte[] chunk = new byte[bytes];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) (random.nextInt(8) == 0 ? random.nextInt(256) : i >> 8);
+        }
+
+        return chunk;
+    }
+
+    static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Trident - A Multithreaded Server Alternative
+ * Copyright 2014 The TridentSDK Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.tridentsdk.server.bench;
+
+import net.tridentsdk.server.world.RegionFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of writing a batch of chunks to a region through the journal, against writing them without
+ * any durability and against syncing the region after every chunk
+ */
+@State(Scope.Thread)
+public class RegionJournalTest {
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(".*" + RegionJournalTest.class.getSimpleName() + ".*")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.milliseconds(500))
+                .measurementIterations(10)
+                .measurementTime(TimeValue.milliseconds(500))
+                .threads(1)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    // The amount of chunks saved to the region between commits
+    @Param({ "1", "16", "64" })
+    private int batch;
+
+    private File directory;
+    private RegionFile unsafe;
+    private RegionFile journaled;
+    private RegionFile synced;
+    private byte[] chunk;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = RegionFixture.createDirectory("journal-bench");
+        unsafe = new RegionFile(new File(directory, "r.0.0.mca"), false);
+        journaled = new RegionFile(new File(directory, "r.1.0.mca"), true);
+        synced = new RegionFile(new File(directory, "r.2.0.mca"), false);
+        chunk = RegionFixture.chunk(16384);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        unsafe.close();
+        journaled.close();
+        synced.close();
+        RegionFixture.delete(directory);
+    }
+
+    private void write(RegionFile region) throws IOException {
+        int slot = next++ & 1023;
+        try (DataOutputStream out = region.getChunkDataOutputStream(slot & 31, slot >> 5)) {
+            out.write(chunk);
+        }
+    }
+
+    @Benchmark
+    public void unsafe() throws IOException {
+        for (int i = 0; i < batch; i++) {
+            write(unsafe);
+        }
+    }
+
+    @Benchmark
+    public void journaled() throws IOException {
+        for (int i = 0; i < batch; i++) {
+            write(journaled);
+        }
+        journaled.commit();
+    }
+
+    @Benchmark
+    public void syncEachChunk() throws IOException {
+        for (int i = 0; i < batch; i++) {
+            write(synced);
+            synced.sync();
+        }
+    }
+}